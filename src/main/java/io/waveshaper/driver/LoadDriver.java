@@ -0,0 +1,137 @@
+package io.waveshaper.driver;
+
+import io.waveshaper.feedback.RateController;
+import io.waveshaper.latency.LatencyRecorder;
+import io.waveshaper.syncable.Pacer;
+import io.waveshaper.syncable.WaveformRateLimiter;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * A LoadDriver issues work at the rate dictated by a {@link WaveformRateLimiter} (or a {@link
+ * Pacer}), and records the latency of each request relative to the time it was supposed to be
+ * sent. This class utilizes the builder pattern for constructing LoadDriver instances.
+ */
+public class LoadDriver {
+  private final WaveformRateLimiter limiter;
+  private final Pacer pacer;
+  private final Executor executor;
+  private final LatencyRecorder recorder;
+  private final RateController controller;
+
+  // make the constructor private since we're using the
+  // builder pattern
+  private LoadDriver(Builder builder) {
+    this.limiter = builder.limiter;
+    this.pacer = builder.pacer;
+    this.executor = builder.executor;
+    this.recorder = builder.recorder;
+    if (builder.controller != null) {
+      this.controller = builder.controller;
+    } else {
+      this.controller = limiter != null ? limiter.getController() : RateController.NONE;
+    }
+  }
+
+  public static class Builder {
+    private WaveformRateLimiter limiter;
+    private Pacer pacer;
+    private Executor executor = Runnable::run;
+    private LatencyRecorder recorder = new LatencyRecorder();
+    private RateController controller;
+
+    public Builder limiter(WaveformRateLimiter limiter) {
+      this.limiter = limiter;
+      return this;
+    }
+
+    public Builder pacer(Pacer pacer) {
+      this.pacer = pacer;
+      return this;
+    }
+
+    public Builder executor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public Builder recorder(LatencyRecorder recorder) {
+      this.recorder = recorder;
+      return this;
+    }
+
+    // the controller that outcomes are reported to. defaults to the rate limiter's
+    // controller, so it only needs to be set when driving a pacer
+    public Builder controller(RateController controller) {
+      this.controller = controller;
+      return this;
+    }
+
+    public LoadDriver build() {
+      if ((limiter == null) == (pacer == null)) {
+        throw new IllegalStateException("Either a rate limiter or a pacer is required");
+      }
+      return new LoadDriver(this);
+    }
+  }
+
+  /**
+   * Submit the provided task until the underlying oscillator has finished.
+   *
+   * @param task the work to perform for each permit
+   */
+  public void run(Runnable task) {
+    while (pacer != null ? pacer.updating() : limiter.updating()) {
+      submit(task);
+    }
+  }
+
+  /**
+   * Wait for a permit, and then execute the provided task. The task's latency is recorded from the
+   * permit's intended send time once it completes.
+   *
+   * @param task the work to perform
+   */
+  public void submit(Runnable task) {
+    long intended = acquireScheduled();
+    controller.started();
+    executor.execute(
+        () -> {
+          boolean failed = true;
+          try {
+            task.run();
+            failed = false;
+          } finally {
+            complete(intended, failed);
+          }
+        });
+  }
+
+  /**
+   * Wait for a permit, and then start the provided asynchronous task. The task's latency is
+   * recorded from the permit's intended send time once the returned stage completes.
+   *
+   * @param task a function that starts the work and returns a stage that completes with it
+   */
+  public void submitAsync(Supplier<? extends CompletionStage<?>> task) {
+    long intended = acquireScheduled();
+    controller.started();
+    executor.execute(
+        () -> task.get().whenComplete((result, error) -> complete(intended, error != null)));
+  }
+
+  private long acquireScheduled() {
+    return pacer != null ? pacer.acquire() : limiter.acquireScheduled();
+  }
+
+  private void complete(long intended, boolean failed) {
+    long latency = System.nanoTime() - intended;
+    recorder.record(latency);
+    controller.observe(latency, failed);
+  }
+
+  public LatencyRecorder recorder() {
+    return recorder;
+  }
+}
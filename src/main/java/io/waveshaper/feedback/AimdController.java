@@ -0,0 +1,164 @@
+package io.waveshaper.feedback;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An additive-increase / multiplicative-decrease (AIMD) controller. Whenever the mean latency or
+ * error rate observed during a tick exceeds its threshold, the effective rate is cut by a constant
+ * factor. Otherwise, the cap grows by a constant amount each tick until the waveform's shape is
+ * fully restored. The cap only grows on ticks in which requests completed. If requests are in
+ * flight but none have completed for longer than the latency threshold, the target system is
+ * treated as saturated. This class utilizes the builder pattern for constructing AimdController
+ * instances.
+ */
+public class AimdController implements RateController {
+  private final long latencyThresholdNanos;
+  private final double errorRateThreshold;
+  private final double additiveIncrease;
+  private final double decreaseFactor;
+  private final double minRate;
+
+  // observations are recorded by many threads, and drained once per tick
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder latencySum = new LongAdder();
+  // the number of requests that have started, but not completed
+  private final LongAdder inFlight = new LongAdder();
+
+  // the current cap. infinity means we're following the waveform
+  private double cap = Double.POSITIVE_INFINITY;
+  private volatile double effectiveRate = 0.0;
+  private volatile double saturationRate = Double.NaN;
+  // the last tick at which requests were completing, or none were outstanding
+  private long lastProgressNanos = System.nanoTime();
+
+  // make the constructor private since we're using the
+  // builder pattern
+  private AimdController(Builder builder) {
+    this.latencyThresholdNanos = builder.latencyThreshold.toNanos();
+    this.errorRateThreshold = builder.errorRateThreshold;
+    this.additiveIncrease = builder.additiveIncrease;
+    this.decreaseFactor = builder.decreaseFactor;
+    this.minRate = builder.minRate;
+  }
+
+  public static class Builder {
+    private Duration latencyThreshold = Duration.ofSeconds(1);
+    private double errorRateThreshold = 0.01;
+    private double additiveIncrease = 10;
+    private double decreaseFactor = 0.5;
+    private double minRate = 1;
+
+    public Builder latencyThreshold(Duration latencyThreshold) {
+      this.latencyThreshold = latencyThreshold;
+      return this;
+    }
+
+    public Builder errorRateThreshold(double errorRateThreshold) {
+      this.errorRateThreshold = errorRateThreshold;
+      return this;
+    }
+
+    public Builder additiveIncrease(double additiveIncrease) {
+      this.additiveIncrease = additiveIncrease;
+      return this;
+    }
+
+    public Builder decreaseFactor(double decreaseFactor) {
+      if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+        throw new IllegalArgumentException("The decrease factor must be between 0 and 1");
+      }
+      this.decreaseFactor = decreaseFactor;
+      return this;
+    }
+
+    public Builder minRate(double minRate) {
+      this.minRate = minRate;
+      return this;
+    }
+
+    public AimdController build() {
+      return new AimdController(this);
+    }
+  }
+
+  @Override
+  public void started() {
+    inFlight.increment();
+  }
+
+  @Override
+  public void observe(long latencyNanos, boolean failed) {
+    inFlight.decrement();
+    requests.increment();
+    latencySum.add(latencyNanos);
+    if (failed) {
+      errors.increment();
+    }
+  }
+
+  @Override
+  public synchronized double limit(double targetRate) {
+    long count = requests.sumThenReset();
+    long failures = errors.sumThenReset();
+    long latency = latencySum.sumThenReset();
+
+    long now = System.nanoTime();
+    boolean idle = count == 0 && inFlight.sum() <= 0;
+    if (count > 0 || idle) {
+      lastProgressNanos = now;
+    }
+    // nothing has completed for longer than the latency threshold, even though
+    // requests are outstanding. this is the worst kind of saturation
+    boolean stalled = count == 0 && now - lastProgressNanos > latencyThresholdNanos;
+    boolean saturated =
+        stalled
+            || count > 0
+                && ((double) failures / count > errorRateThreshold
+                    || latency / count > latencyThresholdNanos);
+
+    if (saturated) {
+      // back off from whichever is lower: the current cap, or the rate that was just applied
+      double base = Math.min(cap, effectiveRate > 0 ? effectiveRate : targetRate);
+      saturationRate = base;
+      cap = Math.max(minRate, base * decreaseFactor);
+    } else if (cap != Double.POSITIVE_INFINITY && count > 0) {
+      // only grow the cap when there's evidence that the target system is healthy
+      cap += additiveIncrease;
+      if (cap >= targetRate) {
+        // the target system has recovered, so resume following the waveform
+        cap = Double.POSITIVE_INFINITY;
+      }
+    }
+    effectiveRate = Math.min(targetRate, cap);
+    return effectiveRate;
+  }
+
+  /**
+   * Get the rate that was applied during the most recent tick.
+   *
+   * @return the effective rate
+   */
+  public double getEffectiveRate() {
+    return effectiveRate;
+  }
+
+  /**
+   * Get the most recent rate at which the target system showed signs of saturation.
+   *
+   * @return the saturation rate, or NaN if the target system has not saturated
+   */
+  public double getSaturationRate() {
+    return saturationRate;
+  }
+
+  /**
+   * Check whether the controller is currently capping the waveform.
+   *
+   * @return true if the effective rate is being held below the waveform
+   */
+  public synchronized boolean throttling() {
+    return cap != Double.POSITIVE_INFINITY;
+  }
+}
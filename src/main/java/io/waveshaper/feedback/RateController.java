@@ -0,0 +1,34 @@
+package io.waveshaper.feedback;
+
+/**
+ * An interface for implementing controllers that sit between an {@link
+ * io.waveshaper.waveforms.Oscillator} and a rate limiter, and cap the rate produced by the
+ * oscillator based on feedback from the system under test.
+ */
+public interface RateController {
+  /** A controller that always passes the waveform's rate through unchanged. */
+  public static final RateController NONE = targetRate -> targetRate;
+
+  /**
+   * Get the rate that should actually be applied. This is called once per oscillator tick.
+   *
+   * @param targetRate the rate produced by the oscillator
+   * @return the effective rate, which should not exceed the target rate
+   */
+  public double limit(double targetRate);
+
+  /**
+   * Report that a request has been sent. Together with {@link #observe}, this lets a controller
+   * tell a target system that has stopped responding apart from one that isn't receiving any
+   * requests.
+   */
+  public default void started() {}
+
+  /**
+   * Report the outcome of a single request to the controller.
+   *
+   * @param latencyNanos the latency of the request in nanoseconds
+   * @param failed whether or not the request failed
+   */
+  public default void observe(long latencyNanos, boolean failed) {}
+}
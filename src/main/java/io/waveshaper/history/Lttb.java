@@ -0,0 +1,74 @@
+package io.waveshaper.history;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling. LTTB reduces a series to a fixed number of points
+ * while keeping its visual shape (peaks, troughs and edges), which makes it a good fit for
+ * rendering long histories on small charts.
+ *
+ * @see <a href="https://skemman.is/handle/1946/15343">Downsampling Time Series for Visual
+ *     Representation (Steinarsson, 2013)</a>
+ */
+public final class Lttb {
+  private Lttb() {}
+
+  /**
+   * Select the indices of the points to keep.
+   *
+   * @param x the x coordinates (e.g. timestamps), in ascending order
+   * @param y the y coordinates
+   * @param length the number of points in the series
+   * @param threshold the maximum number of points to keep
+   * @return the indices of the selected points, in ascending order
+   */
+  public static int[] select(long[] x, double[] y, int length, int threshold) {
+    if (threshold < 3) {
+      throw new IllegalArgumentException("The threshold must be at least 3");
+    }
+    if (threshold >= length) {
+      int[] all = new int[length];
+      for (int i = 0; i < length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+    int[] selected = new int[threshold];
+    // the first and last points are always kept. everything in between is
+    // split into (threshold - 2) buckets, and one point is picked per bucket
+    double every = (double) (length - 2) / (threshold - 2);
+    long origin = x[0];
+    int a = 0;
+    for (int i = 0; i < threshold - 2; i++) {
+      // the average of the next bucket is the third vertex of the triangle
+      int avgStart = (int) ((i + 1) * every) + 1;
+      int avgEnd = Math.min((int) ((i + 2) * every) + 1, length);
+      double avgX = 0;
+      double avgY = 0;
+      for (int j = avgStart; j < avgEnd; j++) {
+        avgX += x[j] - origin;
+        avgY += y[j];
+      }
+      avgX /= avgEnd - avgStart;
+      avgY /= avgEnd - avgStart;
+
+      // pick the point in the current bucket that forms the largest triangle
+      // with the previously selected point and the next bucket's average
+      int rangeStart = (int) (i * every) + 1;
+      int rangeEnd = (int) ((i + 1) * every) + 1;
+      double ax = x[a] - origin;
+      double ay = y[a];
+      double maxArea = -1;
+      int next = rangeStart;
+      for (int j = rangeStart; j < rangeEnd; j++) {
+        double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - (x[j] - origin)) * (avgY - ay));
+        if (area > maxArea) {
+          maxArea = area;
+          next = j;
+        }
+      }
+      selected[i + 1] = next;
+      a = next;
+    }
+    selected[threshold - 1] = length - 1;
+    return selected;
+  }
+}
@@ -0,0 +1,277 @@
+package io.waveshaper.history;
+
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * A bounded-memory history of target and delivered rates, for rendering long-running tests. Samples
+ * are rolled up into per-second, per-minute and per-hour averages, and each resolution is kept in a
+ * fixed-size ring of primitive arrays, so memory use only depends on the configured retention.
+ *
+ * <p>Samples are usually recorded from a rate limiter's callback. The delivered rate is measured
+ * over the tick that just ended, so it is paired with the rate that was in effect during that tick,
+ * rather than the new target:
+ *
+ * <pre>{@code
+ * RateHistory history = new RateHistory.Builder().build();
+ * limiter.registerCallback(rl -> history.record(rl.getCurrentRate(), rl.getEps()));
+ * }</pre>
+ *
+ * <p>Snapshots never block the recording thread. Each ring is guarded by a sequence counter
+ * (a seqlock): readers copy the ring and retry if a write happened while they were copying.
+ */
+public class RateHistory {
+  /** The resolutions that samples are rolled up into. */
+  public enum Resolution {
+    SECONDS(1_000L),
+    MINUTES(60_000L),
+    HOURS(3_600_000L);
+
+    private final long millis;
+
+    Resolution(long millis) {
+      this.millis = millis;
+    }
+
+    public Duration duration() {
+      return Duration.ofMillis(millis);
+    }
+  }
+
+  private final Ring[] rings;
+
+  private RateHistory(Builder builder) {
+    Resolution[] resolutions = Resolution.values();
+    rings = new Ring[resolutions.length];
+    for (int i = 0; i < resolutions.length; i++) {
+      long millis = builder.retention[i].toMillis();
+      int capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, millis / resolutions[i].millis));
+      rings[i] = new Ring(resolutions[i].millis, capacity);
+    }
+  }
+
+  public static class Builder {
+    // by default, keep an hour of seconds, a day of minutes and a month of hours
+    private final Duration[] retention = {
+      Duration.ofHours(1), Duration.ofDays(1), Duration.ofDays(30)
+    };
+
+    /**
+     * Set how much history is kept at the provided resolution.
+     *
+     * @param resolution the resolution
+     * @param duration the amount of history to keep
+     * @return the builder
+     */
+    public Builder retain(Resolution resolution, Duration duration) {
+      if (duration.compareTo(resolution.duration()) < 0) {
+        throw new IllegalArgumentException(
+            "The retention must cover at least one " + resolution.name().toLowerCase());
+      }
+      this.retention[resolution.ordinal()] = duration;
+      return this;
+    }
+
+    public RateHistory build() {
+      return new RateHistory(this);
+    }
+  }
+
+  public void record(double target, double delivered) {
+    record(System.currentTimeMillis(), target, delivered);
+  }
+
+  /**
+   * Record a sample. Samples become visible in a snapshot once the period they belong to has
+   * passed, i.e. when a sample from a later period is recorded.
+   *
+   * @param epochMillis the time of the sample
+   * @param target the target rate that was in effect while the delivered rate was measured
+   * @param delivered the delivered rate
+   */
+  public synchronized void record(long epochMillis, double target, double delivered) {
+    add(0, epochMillis, target, delivered, 1);
+  }
+
+  /**
+   * Take a consistent copy of the history at the provided resolution. This is safe to call from
+   * any thread, and never blocks the recording thread.
+   *
+   * @param resolution the resolution
+   * @return the samples, from oldest to newest
+   */
+  public Series snapshot(Resolution resolution) {
+    return rings[resolution.ordinal()].snapshot();
+  }
+
+  // must be called while holding the lock. the sums and count of a finished
+  // period cascade into the next resolution, so every average is weighted by
+  // the number of raw samples behind it
+  private void add(int level, long timestamp, double target, double delivered, long count) {
+    Ring ring = rings[level];
+    long start = Math.floorDiv(timestamp, ring.resolutionMillis) * ring.resolutionMillis;
+    if (ring.pendingCount > 0 && start != ring.pendingStart) {
+      ring.publish(
+          ring.pendingStart,
+          ring.pendingTarget / ring.pendingCount,
+          ring.pendingDelivered / ring.pendingCount);
+      if (level + 1 < rings.length) {
+        add(
+            level + 1,
+            ring.pendingStart,
+            ring.pendingTarget,
+            ring.pendingDelivered,
+            ring.pendingCount);
+      }
+      ring.pendingTarget = 0.0;
+      ring.pendingDelivered = 0.0;
+      ring.pendingCount = 0;
+    }
+    ring.pendingStart = start;
+    ring.pendingTarget += target;
+    ring.pendingDelivered += delivered;
+    ring.pendingCount += count;
+  }
+
+  /** A ring of samples at a single resolution. */
+  private static final class Ring {
+    private final long resolutionMillis;
+    private final int capacity;
+    private final long[] timestamps;
+    private final double[] targets;
+    private final double[] delivered;
+    // the number of samples ever published
+    private long count = 0;
+    // odd while a write is in progress
+    private volatile long sequence = 0;
+
+    // the period that is currently being accumulated. only touched by the
+    // recording thread
+    private long pendingStart;
+    private double pendingTarget;
+    private double pendingDelivered;
+    private long pendingCount;
+
+    Ring(long resolutionMillis, int capacity) {
+      this.resolutionMillis = resolutionMillis;
+      this.capacity = capacity;
+      this.timestamps = new long[capacity];
+      this.targets = new double[capacity];
+      this.delivered = new double[capacity];
+    }
+
+    void publish(long timestamp, double target, double delivered) {
+      long seq = sequence;
+      sequence = seq + 1;
+      // keep the writes below from being reordered before the odd sequence
+      VarHandle.storeStoreFence();
+      int slot = (int) (count % capacity);
+      this.timestamps[slot] = timestamp;
+      this.targets[slot] = target;
+      this.delivered[slot] = delivered;
+      count++;
+      sequence = seq + 2;
+    }
+
+    Series snapshot() {
+      long[] ts = new long[capacity];
+      double[] tg = new double[capacity];
+      double[] dl = new double[capacity];
+      while (true) {
+        long seq = sequence;
+        if ((seq & 1) != 0) {
+          Thread.onSpinWait();
+          continue;
+        }
+        long n = count;
+        int size = (int) Math.min(Math.max(n, 0), capacity);
+        int oldest = (int) (n <= capacity ? 0 : n % capacity);
+        // copy the ring, from oldest to newest
+        int head = Math.min(size, capacity - oldest);
+        System.arraycopy(timestamps, oldest, ts, 0, head);
+        System.arraycopy(targets, oldest, tg, 0, head);
+        System.arraycopy(delivered, oldest, dl, 0, head);
+        System.arraycopy(timestamps, 0, ts, head, size - head);
+        System.arraycopy(targets, 0, tg, head, size - head);
+        System.arraycopy(delivered, 0, dl, head, size - head);
+        // keep the copies above from being reordered after the re-check
+        VarHandle.acquireFence();
+        if (sequence == seq) {
+          return new Series(ts, tg, dl, size);
+        }
+      }
+    }
+  }
+
+  /** An immutable copy of a history, from oldest to newest. */
+  public static final class Series {
+    private final long[] timestamps;
+    private final double[] targets;
+    private final double[] delivered;
+    private final int size;
+
+    Series(long[] timestamps, double[] targets, double[] delivered, int size) {
+      this.timestamps = timestamps;
+      this.targets = targets;
+      this.delivered = delivered;
+      this.size = size;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    // the start of the i-th period, in epoch millis
+    public long timestamp(int i) {
+      return timestamps[checkIndex(i)];
+    }
+
+    public double target(int i) {
+      return targets[checkIndex(i)];
+    }
+
+    public double delivered(int i) {
+      return delivered[checkIndex(i)];
+    }
+
+    public long[] timestamps() {
+      return Arrays.copyOf(timestamps, size);
+    }
+
+    public double[] targets() {
+      return Arrays.copyOf(targets, size);
+    }
+
+    public double[] delivered() {
+      return Arrays.copyOf(delivered, size);
+    }
+
+    /**
+     * Downsample the series with {@link Lttb}. Points are selected by the shape of the delivered
+     * rate, since it is the noisier of the two, and the target rate is kept at the same points.
+     *
+     * @param threshold the maximum number of points to keep (at least 3)
+     * @return the downsampled series
+     */
+    public Series downsample(int threshold) {
+      int[] selected = Lttb.select(timestamps, delivered, size, threshold);
+      long[] ts = new long[selected.length];
+      double[] tg = new double[selected.length];
+      double[] dl = new double[selected.length];
+      for (int i = 0; i < selected.length; i++) {
+        ts[i] = timestamps[selected[i]];
+        tg[i] = targets[selected[i]];
+        dl[i] = delivered[selected[i]];
+      }
+      return new Series(ts, tg, dl, selected.length);
+    }
+
+    private int checkIndex(int i) {
+      if (i < 0 || i >= size) {
+        throw new IndexOutOfBoundsException(i);
+      }
+      return i;
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package io.waveshaper.latency;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear (HDR style) histogram of nanosecond latencies. Values are bucketed with a relative
+ * error of less than 1%, which keeps the memory footprint fixed regardless of how many values are
+ * recorded or how large they are.
+ *
+ * <p>Recording is lock-free, so a histogram can be read while another thread is writing to it.
+ * For the lowest overhead, spread writer threads across several histograms (see {@link
+ * LatencyRecorder}) and merge them when reporting.
+ */
+public class LatencyHistogram {
+  // each power of two is split into 2^(SUB_BUCKET_BITS - 1) linear sub-buckets
+  private static final int SUB_BUCKET_BITS = 8;
+  private static final int SUB_BUCKET_HALF_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  /**
+   * Record a single latency value.
+   *
+   * @param nanos the latency in nanoseconds. negative values are recorded as zero
+   */
+  public void recordValue(long nanos) {
+    counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+  }
+
+  /**
+   * Add the contents of another histogram to this one.
+   *
+   * @param other the histogram to merge into this one
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+  }
+
+  /**
+   * Subtract the contents of another histogram from this one. This is useful for computing the
+   * values that were recorded between two snapshots.
+   *
+   * @param other an earlier snapshot of this histogram
+   */
+  public void subtract(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, -count);
+      }
+    }
+  }
+
+  /**
+   * Get a point-in-time copy of this histogram.
+   *
+   * @return a new histogram with the same contents
+   */
+  public LatencyHistogram copy() {
+    LatencyHistogram copy = new LatencyHistogram();
+    copy.add(this);
+    return copy;
+  }
+
+  /**
+   * Get the total number of recorded values.
+   *
+   * @return the number of recorded values
+   */
+  public long getTotalCount() {
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Get the value at the provided percentile, e.g. 99.9 for the p999 latency.
+   *
+   * @param percentile a number between 0 and 100
+   * @return the highest value that is equivalent (within the histogram's precision) to the value at
+   *     the provided percentile, or 0 if nothing has been recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long[] snapshot = snapshotCounts();
+    long total = 0;
+    for (long count : snapshot) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    double clamped = Math.min(100.0, Math.max(0.0, percentile));
+    long target = Math.max(1, (long) Math.ceil(clamped / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return highestEquivalentValue(i);
+      }
+    }
+    return highestEquivalentValue(BUCKET_COUNT - 1);
+  }
+
+  /**
+   * Get the largest recorded value.
+   *
+   * @return the highest value that is equivalent to the largest recorded value, or 0 if nothing has
+   *     been recorded
+   */
+  public long getMaxValue() {
+    for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+      if (counts.get(i) != 0) {
+        return highestEquivalentValue(i);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the mean of the recorded values.
+   *
+   * @return the mean value, or 0 if nothing has been recorded
+   */
+  public double getMean() {
+    double sum = 0;
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = counts.get(i);
+      if (count != 0) {
+        sum += count * (double) midpointValue(i);
+        total += count;
+      }
+    }
+    return total == 0 ? 0 : sum / total;
+  }
+
+  private long[] snapshotCounts() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // keep the top SUB_BUCKET_BITS bits of the value, and record how far they were shifted
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    int mantissa = (int) (value >>> shift);
+    return shift * SUB_BUCKET_HALF_COUNT + mantissa;
+  }
+
+  static long lowestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+    long mantissa = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+    return mantissa << shift;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+    return lowestEquivalentValue(index) + (1L << shift) - 1;
+  }
+
+  private static long midpointValue(int index) {
+    long low = lowestEquivalentValue(index);
+    return low + (highestEquivalentValue(index) - low) / 2;
+  }
+}
@@ -0,0 +1,93 @@
+package io.waveshaper.latency;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records latencies into a fixed set of striped {@link LatencyHistogram}s. Each thread records
+ * into the stripe picked by its id, so recording threads rarely contend, and memory use is bounded
+ * by the number of cores rather than by the number of threads that have ever recorded. The stripes
+ * are merged whenever a snapshot is requested.
+ */
+public class LatencyRecorder {
+  // a stripe per core. stripes are created on first use, so a recorder that is
+  // only written to by a few threads stays small
+  private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+  private final AtomicReferenceArray<LatencyHistogram> histograms =
+      new AtomicReferenceArray<>(STRIPES);
+
+  // the cumulative snapshot returned by the previous call to intervalSnapshot
+  private LatencyHistogram lastCumulative = new LatencyHistogram();
+
+  /**
+   * Record a latency for the calling thread.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    LatencyHistogram histogram = histograms.get(stripe);
+    if (histogram == null) {
+      histograms.compareAndSet(stripe, null, new LatencyHistogram());
+      histogram = histograms.get(stripe);
+    }
+    histogram.recordValue(nanos);
+  }
+
+  /**
+   * Record the time that has elapsed since the provided instant. When the instant is the time a
+   * request was supposed to be sent (rather than the time it actually was sent), the recorded
+   * latency is free from coordinated omission.
+   *
+   * @param startNanos a {@link System#nanoTime()} value
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Merge the striped histograms into a single histogram.
+   *
+   * @return a histogram containing every value recorded so far
+   */
+  public LatencyHistogram snapshot() {
+    LatencyHistogram merged = new LatencyHistogram();
+    for (int i = 0; i < STRIPES; i++) {
+      LatencyHistogram histogram = histograms.get(i);
+      if (histogram != null) {
+        merged.add(histogram);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Merge the striped histograms into a single histogram, containing only the values that were
+   * recorded since the last call to this method. This is intended to be called periodically (e.g.
+   * from a {@link io.waveshaper.syncable.WaveformRateLimiter} callback) for reporting.
+   *
+   * @return a histogram containing the values recorded during the last interval
+   */
+  public synchronized LatencyHistogram intervalSnapshot() {
+    LatencyHistogram cumulative = snapshot();
+    LatencyHistogram interval = cumulative.copy();
+    interval.subtract(lastCumulative);
+    lastCumulative = cumulative;
+    return interval;
+  }
+
+  // the number of histograms that have been created, for testing
+  int histogramCount() {
+    int count = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      if (histograms.get(i) != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // the smallest power of two that is at least the number of cores
+  static int stripes(int cores) {
+    return cores <= 1 ? 1 : Integer.highestOneBit(cores - 1) << 1;
+  }
+}
@@ -0,0 +1,94 @@
+package io.waveshaper.metrics;
+
+import io.waveshaper.latency.LatencyHistogram;
+import io.waveshaper.latency.LatencyRecorder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metrics recorder that keeps everything in memory using lock-free counters and striped
+ * histograms, so that it is cheap enough to leave enabled in production.
+ */
+public class CounterMetrics implements MetricsRecorder {
+  private volatile double targetRate = 0.0;
+  private volatile double deliveredRate = 0.0;
+  private final LongAdder permits = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder ticks = new LongAdder();
+  private final LatencyRecorder permitWait = new LatencyRecorder();
+  private final LatencyRecorder tickLateness = new LatencyRecorder();
+  private final LatencyRecorder dispatchLatency = new LatencyRecorder();
+  private final LatencyRecorder sequenceGeneration = new LatencyRecorder();
+
+  @Override
+  public void recordTargetRate(double rate) {
+    targetRate = rate;
+  }
+
+  @Override
+  public void recordDeliveredRate(double rate) {
+    deliveredRate = rate;
+  }
+
+  @Override
+  public void recordPermitWait(long nanos) {
+    permits.increment();
+    permitWait.record(nanos);
+  }
+
+  @Override
+  public void recordRejection() {
+    rejections.increment();
+  }
+
+  @Override
+  public void recordTickLateness(long nanos) {
+    ticks.increment();
+    tickLateness.record(nanos);
+  }
+
+  @Override
+  public void recordDispatchLatency(long nanos) {
+    dispatchLatency.record(nanos);
+  }
+
+  @Override
+  public void recordSequenceGeneration(long nanos) {
+    sequenceGeneration.record(nanos);
+  }
+
+  public double getTargetRate() {
+    return targetRate;
+  }
+
+  public double getDeliveredRate() {
+    return deliveredRate;
+  }
+
+  public long getPermits() {
+    return permits.sum();
+  }
+
+  public long getRejections() {
+    return rejections.sum();
+  }
+
+  public long getTicks() {
+    return ticks.sum();
+  }
+
+  public LatencyHistogram getPermitWait() {
+    return permitWait.snapshot();
+  }
+
+  public LatencyHistogram getTickLateness() {
+    return tickLateness.snapshot();
+  }
+
+  public LatencyHistogram getDispatchLatency() {
+    return dispatchLatency.snapshot();
+  }
+
+  public LatencyHistogram getSequenceGeneration() {
+    return sequenceGeneration.snapshot();
+  }
+}
@@ -0,0 +1,139 @@
+package io.waveshaper.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A metrics recorder that emits Java Flight Recorder events, so that waveshaper's behavior can be
+ * correlated with GC and CPU profiles. Events are only committed when they are enabled in the
+ * active recording, and cost very little otherwise.
+ */
+public class JfrMetrics implements MetricsRecorder {
+  @Override
+  public void recordTargetRate(double rate) {
+    RateEvent event = new RateEvent();
+    if (event.shouldCommit()) {
+      event.kind = "target";
+      event.rate = rate;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void recordDeliveredRate(double rate) {
+    RateEvent event = new RateEvent();
+    if (event.shouldCommit()) {
+      event.kind = "delivered";
+      event.rate = rate;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void recordPermitWait(long nanos) {
+    PermitWaitEvent event = new PermitWaitEvent();
+    if (event.shouldCommit()) {
+      event.wait = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void recordRejection() {
+    RejectionEvent event = new RejectionEvent();
+    if (event.shouldCommit()) {
+      event.commit();
+    }
+  }
+
+  @Override
+  public void recordTickLateness(long nanos) {
+    TickEvent event = new TickEvent();
+    if (event.shouldCommit()) {
+      event.lateness = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void recordDispatchLatency(long nanos) {
+    DispatchEvent event = new DispatchEvent();
+    if (event.shouldCommit()) {
+      event.latency = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void recordSequenceGeneration(long nanos) {
+    SequenceEvent event = new SequenceEvent();
+    if (event.shouldCommit()) {
+      event.duration = nanos;
+      event.commit();
+    }
+  }
+
+  @Name("io.waveshaper.Rate")
+  @Label("Rate")
+  @Category("Waveshaper")
+  @Description("A target or delivered rate, recorded once per oscillator tick")
+  @StackTrace(false)
+  static class RateEvent extends Event {
+    @Label("Kind")
+    String kind;
+
+    @Label("Rate")
+    double rate;
+  }
+
+  @Name("io.waveshaper.PermitWait")
+  @Label("Permit Wait")
+  @Category("Waveshaper")
+  @StackTrace(false)
+  static class PermitWaitEvent extends Event {
+    @Label("Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long wait;
+  }
+
+  @Name("io.waveshaper.Rejection")
+  @Label("Rejected Permit")
+  @Category("Waveshaper")
+  @StackTrace(false)
+  static class RejectionEvent extends Event {}
+
+  @Name("io.waveshaper.Tick")
+  @Label("Oscillator Tick")
+  @Category("Waveshaper")
+  @StackTrace(false)
+  static class TickEvent extends Event {
+    @Label("Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    long lateness;
+  }
+
+  @Name("io.waveshaper.Dispatch")
+  @Label("Syncable Dispatch")
+  @Category("Waveshaper")
+  @StackTrace(false)
+  static class DispatchEvent extends Event {
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+  }
+
+  @Name("io.waveshaper.Sequence")
+  @Label("Sequence Generation")
+  @Category("Waveshaper")
+  @StackTrace(false)
+  static class SequenceEvent extends Event {
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long duration;
+  }
+}
@@ -0,0 +1,71 @@
+package io.waveshaper.metrics;
+
+/**
+ * An interface for recording metrics from the oscillator, rate limiter, and sequence hot paths.
+ * Implementations are called on every permit and tick, so they must be cheap and threadsafe.
+ */
+public interface MetricsRecorder {
+  /** A recorder that discards everything. This is the default. */
+  public static final MetricsRecorder NOOP =
+      new MetricsRecorder() {
+        @Override
+        public boolean enabled() {
+          return false;
+        }
+      };
+
+  /**
+   * Whether or not metrics should be recorded. Callers may skip any work (e.g. reading the clock)
+   * needed to produce a metric when this returns false.
+   *
+   * @return true if metrics are being recorded
+   */
+  public default boolean enabled() {
+    return true;
+  }
+
+  /**
+   * Record the rate produced by the oscillator at the start of a tick.
+   *
+   * @param rate the target rate, in permits per second
+   */
+  public default void recordTargetRate(double rate) {}
+
+  /**
+   * Record the rate that was actually delivered during the previous tick.
+   *
+   * @param rate the delivered rate, in permits per second
+   */
+  public default void recordDeliveredRate(double rate) {}
+
+  /**
+   * Record how long a caller waited for a permit.
+   *
+   * @param nanos the wait time in nanoseconds
+   */
+  public default void recordPermitWait(long nanos) {}
+
+  /** Record a tryAcquire call that did not receive a permit. */
+  public default void recordRejection() {}
+
+  /**
+   * Record how late an oscillator tick fired, relative to its schedule.
+   *
+   * @param nanos the lateness in nanoseconds
+   */
+  public default void recordTickLateness(long nanos) {}
+
+  /**
+   * Record how long it took to dispatch a signal change to every syncable.
+   *
+   * @param nanos the dispatch latency in nanoseconds
+   */
+  public default void recordDispatchLatency(long nanos) {}
+
+  /**
+   * Record how long it took to generate a single value from an infinite sequence.
+   *
+   * @param nanos the generation time in nanoseconds
+   */
+  public default void recordSequenceGeneration(long nanos) {}
+}
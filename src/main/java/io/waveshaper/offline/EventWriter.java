@@ -0,0 +1,97 @@
+package io.waveshaper.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** A buffered writer for timestamped events. Note: this class is not thread safe */
+class EventWriter implements AutoCloseable {
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final byte[] DIGITS = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+  private final FileChannel channel;
+  private final OfflineGenerator.Format format;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  EventWriter(Path path, OfflineGenerator.Format format) throws IOException {
+    this.channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    this.format = format;
+  }
+
+  void write(long epochNanos, byte[] record) throws IOException {
+    // leave room for the largest possible timestamp + framing
+    if (buffer.remaining() < record.length + 32) {
+      flush();
+      if (buffer.remaining() < record.length + 32) {
+        writeLarge(epochNanos, record);
+        return;
+      }
+    }
+    if (format == OfflineGenerator.Format.BINARY) {
+      buffer.putLong(epochNanos).putInt(record.length).put(record);
+    } else {
+      putDecimal(epochNanos);
+      buffer.put((byte) '\t').put(record).put((byte) '\n');
+    }
+  }
+
+  private void writeLarge(long epochNanos, byte[] record) throws IOException {
+    if (format == OfflineGenerator.Format.BINARY) {
+      buffer.putLong(epochNanos).putInt(record.length);
+      flush();
+      drain(ByteBuffer.wrap(record));
+    } else {
+      putDecimal(epochNanos);
+      buffer.put((byte) '\t');
+      flush();
+      drain(ByteBuffer.wrap(record));
+      buffer.put((byte) '\n');
+    }
+  }
+
+  // write a non-negative number without allocating a string
+  private void putDecimal(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Timestamps must not be negative");
+    }
+    int digits = 1;
+    for (long v = value / 10; v > 0; v /= 10) {
+      digits++;
+    }
+    int end = buffer.position() + digits;
+    for (int i = end - 1; i >= buffer.position(); i--) {
+      buffer.put(i, DIGITS[(int) (value % 10)]);
+      value /= 10;
+    }
+    buffer.position(end);
+  }
+
+  void flush() throws IOException {
+    buffer.flip();
+    drain(buffer);
+    buffer.clear();
+  }
+
+  private void drain(ByteBuffer source) throws IOException {
+    while (source.hasRemaining()) {
+      channel.write(source);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+}
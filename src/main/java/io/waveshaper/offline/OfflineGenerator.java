@@ -0,0 +1,282 @@
+package io.waveshaper.offline;
+
+import io.waveshaper.sequences.InfiniteSequence;
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.PermitCurve;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Generates a dataset of timestamped events, whose rate follows an {@link Oscillator}'s waveform,
+ * in virtual time. Nothing sleeps: event times are computed directly from the oscillator's {@link
+ * PermitCurve}, so a day of data can be produced as fast as the CPU and disk allow. This class
+ * utilizes the builder pattern for constructing OfflineGenerator instances.
+ *
+ * @param <T> the type of records produced by the underlying sequence
+ */
+public class OfflineGenerator<T> {
+  /** The output format of a generated file. */
+  public enum Format {
+    /** One event per line: the event time in epoch nanoseconds, a tab, and the record */
+    LINES,
+    /** Per event: the event time in epoch nanoseconds, the record length, and the record */
+    BINARY
+  }
+
+  /**
+   * A callback for receiving generated events.
+   *
+   * @param <T> the type of records produced by the underlying sequence
+   */
+  @FunctionalInterface
+  public interface EventConsumer<T> {
+    public void accept(long epochNanos, T record);
+  }
+
+  private final PermitCurve curve;
+  private final InfiniteSequence.Builder<T> sequence;
+  private final long startEpochNanos;
+  private final long durationNanos;
+  private final Function<? super T, String> serializer;
+  private final Format format;
+  private final int parallelism;
+  private final Duration sliceDuration;
+
+  // make the constructor private since we're using the
+  // builder pattern
+  private OfflineGenerator(Builder<T> builder) {
+    this.curve = builder.oscillator.permitCurve();
+    this.sequence = builder.sequence;
+    this.startEpochNanos =
+        builder.startTime.getEpochSecond() * 1_000_000_000L + builder.startTime.getNano();
+    this.durationNanos =
+        (builder.duration != null ? builder.duration : builder.oscillator.duration()).toNanos();
+    this.serializer = builder.serializer;
+    this.format = builder.format;
+    this.parallelism = builder.parallelism;
+    this.sliceDuration = builder.sliceDuration;
+  }
+
+  /**
+   * An builder that is used to create offline generators.
+   *
+   * @param <K> the type of records produced by the underlying sequence
+   */
+  public static class Builder<K> {
+    private Oscillator oscillator;
+    private InfiniteSequence.Builder<K> sequence;
+    private Instant startTime = Instant.EPOCH;
+    private Duration duration;
+    private Function<? super K, String> serializer = String::valueOf;
+    private Format format = Format.LINES;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Duration sliceDuration = Duration.ofMinutes(1);
+
+    public Builder<K> oscillator(Oscillator oscillator) {
+      this.oscillator = oscillator;
+      return this;
+    }
+
+    public Builder<K> sequence(InfiniteSequence.Builder<K> sequence) {
+      this.sequence = sequence;
+      return this;
+    }
+
+    public Builder<K> startTime(Instant startTime) {
+      this.startTime = startTime;
+      return this;
+    }
+
+    // defaults to the duration of the oscillator's signal
+    public Builder<K> duration(Duration duration) {
+      this.duration = duration;
+      return this;
+    }
+
+    public Builder<K> serializer(Function<? super K, String> serializer) {
+      this.serializer = serializer;
+      return this;
+    }
+
+    public Builder<K> format(Format format) {
+      this.format = format;
+      return this;
+    }
+
+    public Builder<K> parallelism(int parallelism) {
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    public Builder<K> sliceDuration(Duration sliceDuration) {
+      this.sliceDuration = sliceDuration;
+      return this;
+    }
+
+    public OfflineGenerator<K> build() {
+      if (oscillator == null || sequence == null) {
+        throw new IllegalStateException("An oscillator and a sequence are required");
+      }
+      if (duration == null && oscillator.infinite()) {
+        throw new IllegalStateException("A duration is required for infinite oscillators");
+      }
+      return new OfflineGenerator<K>(this);
+    }
+  }
+
+  /**
+   * Generate every event, in order, on the calling thread.
+   *
+   * @param consumer the callback that receives each event
+   * @return the number of events that were generated
+   */
+  public long forEach(EventConsumer<? super T> consumer) {
+    long end = permitsBefore(durationNanos);
+    InfiniteSequence<T> seq = sequence.build();
+    for (long permit = 0; permit < end; permit++) {
+      consumer.accept(startEpochNanos + curve.deadlineNanos(permit), seq.next());
+    }
+    return end;
+  }
+
+  /**
+   * Generate every event and write them to a file. Records are drawn from a single infinite
+   * sequence, in order, on the calling thread, so the file contains the same dataset as {@link
+   * #forEach}. The timeline is split into slices, whose event times are computed and serialized in
+   * parallel, and then concatenated in order. At most {@code parallelism} slices are held in
+   * memory at once.
+   *
+   * @param path the file to write. it will be created or truncated
+   * @return the number of events that were written
+   * @throws IOException if the file could not be written
+   */
+  public long writeTo(Path path) throws IOException {
+    // compute the slice boundaries up front, so that adjacent slices agree on
+    // which permits belong to them
+    long sliceNanos = Math.max(1, sliceDuration.toNanos());
+    int slices = (int) Math.max(1, (durationNanos + sliceNanos - 1) / sliceNanos);
+    long[] boundaries = new long[slices + 1];
+    for (int i = 1; i <= slices; i++) {
+      boundaries[i] = permitsBefore(Math.min(durationNanos, i * sliceNanos));
+    }
+
+    Path directory = path.toAbsolutePath().getParent();
+    int workers = Math.max(1, parallelism);
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    List<Future<Path>> parts = new ArrayList<>(slices);
+    InfiniteSequence<T> seq = sequence.build();
+    try (FileChannel out =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      int appended = 0;
+      for (int i = 0; i < slices; i++) {
+        long from = boundaries[i];
+        List<T> records = next(seq, boundaries[i + 1] - from);
+        parts.add(executor.submit(() -> writeSlice(directory, from, records)));
+        // bound the number of slices in memory by appending the oldest one
+        if (parts.size() - appended >= workers) {
+          append(await(parts.get(appended++)), out);
+        }
+      }
+      while (appended < parts.size()) {
+        append(await(parts.get(appended++)), out);
+      }
+    } finally {
+      executor.shutdownNow();
+      // clean up any parts that were not concatenated
+      for (Future<Path> future : parts) {
+        if (future.isDone() && !future.isCancelled()) {
+          try {
+            Files.deleteIfExists(future.get());
+          } catch (ExecutionException | InterruptedException | IOException e) {
+            // best effort
+          }
+        }
+      }
+    }
+    return boundaries[slices];
+  }
+
+  // draw the records for a slice. sequences are stateful and not thread safe,
+  // so records are always generated in order, on a single thread
+  private static <T> List<T> next(InfiniteSequence<T> seq, long count) {
+    if (count > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Too many events in a single slice. Use shorter slices");
+    }
+    List<T> records = new ArrayList<>((int) count);
+    for (long i = 0; i < count; i++) {
+      records.add(seq.next());
+    }
+    return records;
+  }
+
+  private Path writeSlice(Path directory, long from, List<T> records) throws IOException {
+    Path part = Files.createTempFile(directory, "waveshaper", ".part");
+    try (EventWriter writer = new EventWriter(part, format)) {
+      for (int i = 0; i < records.size(); i++) {
+        long eventTime = startEpochNanos + curve.deadlineNanos(from + i);
+        writer.write(eventTime, serializer.apply(records.get(i)).getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return part;
+  }
+
+  private static void append(Path part, FileChannel out) throws IOException {
+    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+      long position = 0;
+      long size = in.size();
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+    } finally {
+      Files.delete(part);
+    }
+  }
+
+  private static Path await(Future<Path> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while generating events", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  // the number of permits whose deadline falls before the provided time
+  private long permitsBefore(long elapsedNanos) {
+    long count = (long) Math.ceil(curve.permitsAt(elapsedNanos));
+    // correct for rounding in either direction, using the exact deadlines
+    while (count > 0 && curve.deadlineNanos(count - 1) >= elapsedNanos) {
+      count--;
+    }
+    while (curve.deadlineNanos(count) < elapsedNanos) {
+      count++;
+    }
+    return count;
+  }
+}
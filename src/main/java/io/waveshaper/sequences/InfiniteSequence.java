@@ -1,5 +1,6 @@
 package io.waveshaper.sequences;
 
+import io.waveshaper.metrics.MetricsRecorder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -15,14 +16,17 @@ public class InfiniteSequence<T> implements Iterator<T> {
   private final Context context;
   private final Navigator<T> nav;
   private final List<BiFunction<Context, Navigator<T>, T>> seq;
+  private final MetricsRecorder metrics;
   private long iterations;
 
   // make the constructor private since we're using the
   // builder pattern
-  private InfiniteSequence(List<BiFunction<Context, Navigator<T>, T>> seq) {
+  private InfiniteSequence(
+      List<BiFunction<Context, Navigator<T>, T>> seq, MetricsRecorder metrics) {
     this.context = new Context();
     this.nav = new Navigator<T>(seq.size());
     this.seq = seq;
+    this.metrics = metrics;
     this.iterations = 0;
   }
 
@@ -111,6 +115,7 @@ public class InfiniteSequence<T> implements Iterator<T> {
    */
   public static class Builder<K> {
     List<BiFunction<Context, Navigator<K>, K>> seq = new ArrayList<>();
+    MetricsRecorder metrics = MetricsRecorder.NOOP;
 
     public Builder<K> add(BiFunction<Context, Navigator<K>, K> generatorFunction) {
       seq.add(generatorFunction);
@@ -122,8 +127,13 @@ public class InfiniteSequence<T> implements Iterator<T> {
       return this;
     }
 
+    public Builder<K> metrics(MetricsRecorder metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
     public InfiniteSequence<K> build() {
-      return new InfiniteSequence<K>(seq);
+      return new InfiniteSequence<K>(seq, metrics);
     }
   }
 
@@ -134,6 +144,18 @@ public class InfiniteSequence<T> implements Iterator<T> {
 
   @Override
   public T next() {
+    if (!metrics.enabled()) {
+      return generate();
+    }
+    long start = System.nanoTime();
+    try {
+      return generate();
+    } finally {
+      metrics.recordSequenceGeneration(System.nanoTime() - start);
+    }
+  }
+
+  private T generate() {
     if (nav.position() == 0) {
       iterations++;
       context.setIteration(iterations);
@@ -151,7 +173,7 @@ public class InfiniteSequence<T> implements Iterator<T> {
       nav.skipped = false;
       iterations++;
       context.setIteration(iterations);
-      return next();
+      return generate();
     }
   }
 }
@@ -0,0 +1,206 @@
+package io.waveshaper.sinks;
+
+import io.waveshaper.feedback.RateController;
+import io.waveshaper.latency.LatencyRecorder;
+import io.waveshaper.syncable.WaveformRateLimiter;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * An HttpLoadSink sends HTTP requests at the rate dictated by a {@link WaveformRateLimiter}.
+ * Requests are sent asynchronously through a single, shared {@link HttpClient}, so connections are
+ * reused and no thread is tied up while a request is in flight. The number of in-flight requests
+ * is bounded by a semaphore rather than a thread pool; once the bound is reached, the sink stops
+ * sending until a response arrives.
+ *
+ * <p>Latency is recorded from the time each request was supposed to be sent according to the
+ * waveform, so a slow server (or a full in-flight window) shows up in the latency distribution
+ * rather than silently lowering the request rate. This class utilizes the builder pattern for
+ * constructing HttpLoadSink instances.
+ */
+public class HttpLoadSink {
+  private final HttpClient client;
+  private final WaveformRateLimiter limiter;
+  private final Supplier<HttpRequest> requests;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final IntPredicate failure;
+  private final LatencyRecorder recorder;
+  private final RateController controller;
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  // make the constructor private since we're using the
+  // builder pattern
+  private HttpLoadSink(Builder builder) {
+    this.client = builder.client != null ? builder.client : HttpClient.newHttpClient();
+    this.limiter = builder.limiter;
+    this.requests = builder.requests;
+    this.maxInFlight = builder.maxInFlight;
+    this.inFlight = new Semaphore(builder.maxInFlight);
+    this.failure = builder.failure;
+    this.recorder = builder.recorder;
+    this.controller =
+        builder.controller != null ? builder.controller : builder.limiter.getController();
+  }
+
+  public static class Builder {
+    private HttpClient client;
+    private WaveformRateLimiter limiter;
+    private Supplier<HttpRequest> requests;
+    private int maxInFlight = 256;
+    private IntPredicate failure = status -> status >= 500;
+    private LatencyRecorder recorder = new LatencyRecorder();
+    private RateController controller;
+
+    // the client to send requests with. a new client is created if one isn't
+    // provided
+    public Builder client(HttpClient client) {
+      this.client = client;
+      return this;
+    }
+
+    public Builder limiter(WaveformRateLimiter limiter) {
+      this.limiter = limiter;
+      return this;
+    }
+
+    // builds the request to send for each permit
+    public Builder request(Supplier<HttpRequest> requests) {
+      this.requests = requests;
+      return this;
+    }
+
+    public Builder request(HttpRequest request) {
+      return request(() -> request);
+    }
+
+    public Builder maxInFlight(int maxInFlight) {
+      if (maxInFlight <= 0) {
+        throw new IllegalArgumentException("maxInFlight must be positive");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    // decides which status codes count as failures. defaults to 5xx
+    public Builder failure(IntPredicate failure) {
+      this.failure = failure;
+      return this;
+    }
+
+    public Builder recorder(LatencyRecorder recorder) {
+      this.recorder = recorder;
+      return this;
+    }
+
+    // overrides the controller that outcomes are reported to. by default, they go
+    // to the limiter's own controller
+    public Builder controller(RateController controller) {
+      this.controller = controller;
+      return this;
+    }
+
+    public HttpLoadSink build() {
+      if (limiter == null) {
+        throw new IllegalStateException("A rate limiter is required");
+      }
+      if (requests == null) {
+        throw new IllegalStateException("A request is required");
+      }
+      return new HttpLoadSink(this);
+    }
+  }
+
+  /**
+   * Send requests until the underlying oscillator has finished, and then wait for the remaining
+   * in-flight requests to complete.
+   *
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  public void run() throws InterruptedException {
+    while (limiter.updating()) {
+      send();
+    }
+    drain();
+  }
+
+  /**
+   * Wait for a permit and a free in-flight slot, and then send a single request. In weighted mode,
+   * the request is charged by the length of its body.
+   *
+   * @return a future that completes with the response
+   * @throws InterruptedException if the calling thread is interrupted while waiting for a slot
+   */
+  public CompletableFuture<HttpResponse<Void>> send() throws InterruptedException {
+    HttpRequest request = requests.get();
+    int permits = 1;
+    if (limiter.weighted()) {
+      long length =
+          request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+      permits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, length));
+    }
+    long intended = limiter.acquireScheduled(permits);
+    inFlight.acquire();
+    controller.started();
+    CompletableFuture<HttpResponse<Void>> response;
+    try {
+      response = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+    } catch (RuntimeException e) {
+      inFlight.release();
+      complete(intended, true);
+      throw e;
+    }
+    sent.increment();
+    return response.whenComplete(
+        (result, error) -> {
+          // record before releasing the slot, so that drain() covers the recording
+          complete(intended, error != null || failure.test(result.statusCode()));
+          inFlight.release();
+        });
+  }
+
+  /**
+   * Wait for all in-flight requests to complete.
+   *
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  public void drain() throws InterruptedException {
+    inFlight.acquire(maxInFlight);
+    inFlight.release(maxInFlight);
+  }
+
+  private void complete(long intended, boolean error) {
+    long latency = System.nanoTime() - intended;
+    if (error) {
+      failed.increment();
+    }
+    recorder.record(latency);
+    controller.observe(latency, error);
+  }
+
+  // the number of requests that have been sent
+  public long getSent() {
+    return sent.sum();
+  }
+
+  // the number of requests that failed, either with an error or a failure status
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  public LatencyRecorder recorder() {
+    return recorder;
+  }
+}
@@ -0,0 +1,222 @@
+package io.waveshaper.syncable;
+
+import io.waveshaper.waveforms.Oscillator;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A rate limiter that distributes a single {@link Oscillator}'s signal across many keys (e.g.
+ * partitions or tenants), so that the total rate follows the waveform. Each key receives a share
+ * of the total that is proportional to its weight, and any share a key isn't using is given to
+ * busier keys.
+ *
+ * <p>Each key has a lock-free bucket, which is found with a primitive-keyed hash lookup, so
+ * acquiring a permit is O(1) and never blocks other keys. Shares are rebalanced on every
+ * oscillator tick, based on the demand observed for each key during the previous tick.
+ */
+public class HierarchicalRateLimiter implements Syncable {
+  // busy keys are offered a bit more than they used during the last tick, so
+  // that they can grow into any slack
+  private static final double HEADROOM = 1.1;
+  // every key keeps a small fraction of its fair share, so that idle keys can
+  // start sending before the next rebalance
+  private static final double MIN_SHARE = 0.05;
+  // how far a key's schedule can fall behind the clock before it stops
+  // catching up. this absorbs oversleeping in parkNanos, which would otherwise
+  // cap the rate of busy keys
+  private static final long TOLERANCE_NANOS = 1_000_000L;
+
+  private final Oscillator osc;
+  private volatile LongKeyedMap<Bucket> buckets = new LongKeyedMap<>();
+  private double totalRate = 0.0;
+  private long lastRebalanceNanos = System.nanoTime();
+
+  /** The state of a single key. */
+  static final class Bucket {
+    private final long key;
+    // mutable, so that reweighting a key keeps its reservations
+    private volatile double weight;
+    // blocked until the first rebalance
+    private final PermitSchedule schedule = new PermitSchedule(0, TOLERANCE_NANOS);
+    // the number of permits requested since the last rebalance
+    private final LongAdder demand = new LongAdder();
+
+    Bucket(long key, double weight) {
+      this.key = key;
+      this.weight = weight;
+    }
+  }
+
+  public static HierarchicalRateLimiter create(Oscillator osc) {
+    return new HierarchicalRateLimiter(osc);
+  }
+
+  private HierarchicalRateLimiter(Oscillator osc_) {
+    osc = osc_;
+    osc.syncWith(this);
+    osc.startIfNotRunning();
+  }
+
+  /**
+   * Register a key, or change the weight of an existing key. Shares are rebalanced immediately.
+   * Reweighting a key keeps its outstanding reservations, so it can't burst above its share.
+   *
+   * @param key the key
+   * @param weight the key's weight, relative to the other keys
+   */
+  public synchronized void register(long key, double weight) {
+    if (!(weight > 0)) {
+      throw new IllegalArgumentException("Weights must be positive");
+    }
+    Bucket existing = buckets.get(key);
+    if (existing != null) {
+      existing.weight = weight;
+    } else {
+      buckets = buckets.with(key, new Bucket(key, weight));
+    }
+    rebalance();
+  }
+
+  @Override
+  public synchronized void onSignalChange(double value) {
+    totalRate = value;
+    rebalance();
+  }
+
+  public double acquire(long key) {
+    return acquire(key, 1);
+  }
+
+  /**
+   * Acquire permits for a key, blocking until they are available.
+   *
+   * @param key a registered key
+   * @param permits the number of permits to acquire
+   * @return the time spent sleeping, in seconds
+   */
+  public double acquire(long key, int permits) {
+    Bucket bucket = bucket(key);
+    bucket.demand.add(permits);
+    return bucket.schedule.acquire(permits);
+  }
+
+  public boolean tryAcquire(long key) {
+    return tryAcquire(key, 1);
+  }
+
+  /**
+   * Acquire permits for a key, if they are available immediately.
+   *
+   * @param key a registered key
+   * @param permits the number of permits to acquire
+   * @return true if the permits were acquired
+   */
+  public boolean tryAcquire(long key, int permits) {
+    Bucket bucket = bucket(key);
+    bucket.demand.add(permits);
+    return bucket.schedule.tryAcquire(permits);
+  }
+
+  // Getter for the current rate of a key
+  public double getRate(long key) {
+    return bucket(key).schedule.rate();
+  }
+
+  // Getter for the total rate produced by the oscillator
+  public synchronized double getTotalRate() {
+    return totalRate;
+  }
+
+  public boolean updating() {
+    return osc.running() && osc.hasNext();
+  }
+
+  private Bucket bucket(long key) {
+    Bucket bucket = buckets.get(key);
+    if (bucket == null) {
+      throw new IllegalArgumentException("Unregistered key: " + key);
+    }
+    return bucket;
+  }
+
+  // must be called while holding the lock
+  private void rebalance() {
+    Bucket[] all = buckets.values(new Bucket[0]);
+    long now = System.nanoTime();
+    double elapsedSeconds = Math.max(1e-3, (now - lastRebalanceNanos) / 1e9);
+    lastRebalanceNanos = now;
+
+    double[] weights = new double[all.length];
+    double[] demands = new double[all.length];
+    for (int i = 0; i < all.length; i++) {
+      weights[i] = all[i].weight;
+      demands[i] = all[i].demand.sumThenReset() / elapsedSeconds;
+    }
+    double[] shares = allocate(totalRate, weights, demands);
+
+    // a key's backlog (in permits) is repaid at its new rate, and keys without
+    // a share block until they get one, without stranding parked callers
+    for (int i = 0; i < all.length; i++) {
+      all[i].schedule.setRate(shares[i]);
+    }
+  }
+
+  /**
+   * Split a total rate across keys using weighted max-min fairness (progressive filling). Keys that
+   * want less than their weighted share receive what they want, and the remainder is split between
+   * the other keys by weight. Anything left over once every key is satisfied is split between all
+   * keys by weight.
+   *
+   * @param total the total rate
+   * @param weights the weight of each key
+   * @param demands the observed rate of each key
+   * @return the share of each key
+   */
+  static double[] allocate(double total, double[] weights, double[] demands) {
+    int n = weights.length;
+    double[] shares = new double[n];
+    if (n == 0 || !(total > 0)) {
+      return shares;
+    }
+    double totalWeight = 0;
+    for (double weight : weights) {
+      totalWeight += weight;
+    }
+    double[] wants = new double[n];
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      double fair = total * weights[i] / totalWeight;
+      wants[i] = Math.max(demands[i] * HEADROOM, fair * MIN_SHARE);
+      order[i] = i;
+    }
+    // satisfy the keys that want the least per unit of weight first
+    Arrays.sort(order, (a, b) -> Double.compare(wants[a] / weights[a], wants[b] / weights[b]));
+
+    double remaining = total;
+    double remainingWeight = totalWeight;
+    int next = 0;
+    for (; next < n; next++) {
+      int i = order[next];
+      double offer = remaining * weights[i] / remainingWeight;
+      if (wants[i] > offer) {
+        break;
+      }
+      shares[i] = wants[i];
+      remaining -= wants[i];
+      remainingWeight -= weights[i];
+    }
+    if (next < n) {
+      // the rest of the keys are constrained, so split what's left by weight
+      for (; next < n; next++) {
+        int i = order[next];
+        shares[i] = remaining * weights[i] / remainingWeight;
+      }
+    } else {
+      // every key is satisfied, so hand out the slack by weight
+      for (int i = 0; i < n; i++) {
+        shares[i] += remaining * weights[i] / totalWeight;
+      }
+    }
+    return shares;
+  }
+}
@@ -0,0 +1,107 @@
+package io.waveshaper.syncable;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, open-addressing hash map with primitive long keys. Lookups don't box the key or
+ * allocate, which keeps per-key lookups on the hot path cheap. Updates return a new map.
+ *
+ * @param <V> the type of values stored in the map
+ */
+final class LongKeyedMap<V> {
+  private final long[] keys;
+  private final Object[] values;
+  private final int mask;
+  private final int size;
+
+  LongKeyedMap() {
+    this(new long[2], new Object[2], 0);
+  }
+
+  private LongKeyedMap(long[] keys, Object[] values, int size) {
+    this.keys = keys;
+    this.values = values;
+    this.mask = keys.length - 1;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  V get(long key) {
+    for (int i = slot(key); ; i = (i + 1) & mask) {
+      Object value = values[i];
+      if (value == null) {
+        return null;
+      }
+      if (keys[i] == key) {
+        return (V) value;
+      }
+    }
+  }
+
+  /**
+   * Get a copy of this map with the provided entry added (or replaced).
+   *
+   * @param key the key
+   * @param value the value, which must not be null
+   * @return a new map
+   */
+  LongKeyedMap<V> with(long key, V value) {
+    // keep the load factor at or below 0.5
+    int capacity = keys.length;
+    while ((size + 1) * 2 > capacity) {
+      capacity *= 2;
+    }
+    long[] newKeys = new long[capacity];
+    Object[] newValues = new Object[capacity];
+    int newSize = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (values[i] != null && keys[i] != key) {
+        insert(newKeys, newValues, keys[i], values[i]);
+        newSize++;
+      }
+    }
+    insert(newKeys, newValues, key, value);
+    return new LongKeyedMap<V>(newKeys, newValues, newSize + 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  V[] values(V[] array) {
+    V[] result = Arrays.copyOf(array, size);
+    int i = 0;
+    for (Object value : values) {
+      if (value != null) {
+        result[i++] = (V) value;
+      }
+    }
+    return result;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private int slot(long key) {
+    return hash(key) & mask;
+  }
+
+  private static void insert(long[] keys, Object[] values, long key, Object value) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    while (values[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+  }
+
+  // the finalizer from murmur3, so that sequential keys spread across the table
+  private static int hash(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
@@ -0,0 +1,59 @@
+package io.waveshaper.syncable;
+
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.PermitCurve;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free alternative to {@link WaveformRateLimiter} that issues each permit at the exact
+ * deadline given by the oscillator's {@link PermitCurve}. Since every deadline is computed from the
+ * permit's index, rather than from the previous permit, the issued rate does not drift from the
+ * waveform, even at very high rates.
+ *
+ * <p>Note: the pacer follows the oscillator's configuration, and does not need the oscillator to
+ * be running.
+ */
+public class Pacer {
+  private final PermitCurve curve;
+  private final long startNanos;
+  private final long durationNanos;
+  private final AtomicLong nextPermit = new AtomicLong();
+
+  public static Pacer create(Oscillator osc) {
+    return new Pacer(osc);
+  }
+
+  private Pacer(Oscillator osc) {
+    curve = osc.permitCurve();
+    durationNanos = osc.infinite() ? Long.MAX_VALUE : osc.duration().toNanos();
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Wait until the next permit is due.
+   *
+   * @return the permit's deadline, as a {@link System#nanoTime()} value
+   */
+  public long acquire() {
+    long deadline = startNanos + curve.deadlineNanos(nextPermit.getAndIncrement());
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+    return deadline;
+  }
+
+  /**
+   * Get the number of permits that have been claimed so far.
+   *
+   * @return the number of permits
+   */
+  public long acquired() {
+    return nextPermit.get();
+  }
+
+  public boolean updating() {
+    return System.nanoTime() - startNanos < durationNanos;
+  }
+}
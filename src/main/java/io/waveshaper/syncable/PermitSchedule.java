@@ -0,0 +1,150 @@
+package io.waveshaper.syncable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free permit schedule (GCRA), for the rate limiters that don't delegate to guava. Every
+ * permit is given a position, and an anchor maps positions to times. Waiters hold on to their
+ * position rather than a deadline, and re-read the anchor while they sleep, so a rate change
+ * (including to or from 0) also applies to permits that were reserved before it.
+ */
+final class PermitSchedule {
+  // waiters wake up at least this often, to pick up rate changes
+  private static final long MAX_PARK_NANOS = 10_000_000L;
+  // times are clamped to this distance from the anchor, so comparing them can't overflow
+  private static final long MAX_OFFSET_NANOS = 1L << 62;
+
+  // how far the schedule can fall behind the clock before it stops catching
+  // up. Long.MAX_VALUE keeps the whole backlog
+  private final long toleranceNanos;
+  // the position of the next permit
+  private final AtomicLong reserved = new AtomicLong();
+  private final AtomicReference<Anchor> anchor;
+  private volatile double rate;
+
+  /** A linear mapping from positions to times, which is replaced whenever the rate changes. */
+  private static final class Anchor {
+    private final long nanos;
+    // the (fractional) position that is due at `nanos`
+    private final double position;
+    // infinite while the rate is 0
+    private final double intervalNanos;
+
+    Anchor(long nanos, double position, double intervalNanos) {
+      this.nanos = nanos;
+      this.position = position;
+      this.intervalNanos = intervalNanos;
+    }
+
+    long timeOf(long position) {
+      double offset = (position - this.position) * intervalNanos;
+      if (Double.isNaN(offset)) {
+        // exactly at the anchor, while the rate is 0
+        offset = Double.POSITIVE_INFINITY;
+      }
+      return nanos + (long) Math.max(-MAX_OFFSET_NANOS, Math.min(MAX_OFFSET_NANOS, offset));
+    }
+
+    double positionAt(long nanos) {
+      return blocked() ? position : position + (nanos - this.nanos) / intervalNanos;
+    }
+
+    boolean blocked() {
+      return intervalNanos == Double.POSITIVE_INFINITY;
+    }
+  }
+
+  PermitSchedule(double permitsPerSecond, long toleranceNanos) {
+    this.toleranceNanos = toleranceNanos;
+    this.rate = permitsPerSecond;
+    this.anchor = new AtomicReference<>(new Anchor(System.nanoTime(), 0, interval(rate)));
+  }
+
+  /**
+   * Reserve permits, and wait until they are due.
+   *
+   * @return the time spent sleeping, in seconds
+   */
+  double acquire(long permits) {
+    long now = System.nanoTime();
+    long due = await(permits, now);
+    return due - now > 0 ? (System.nanoTime() - now) / 1e9 : 0.0;
+  }
+
+  /**
+   * Reserve permits, and wait until they are due. Callers that are behind the schedule don't wait
+   * at all, so they catch up.
+   *
+   * @return the time at which the permits were due, as a {@link System#nanoTime()} value
+   */
+  long acquireDue(long permits) {
+    return await(permits, System.nanoTime());
+  }
+
+  /** Reserve permits, if they are due now. */
+  boolean tryAcquire(long permits) {
+    long now = System.nanoTime();
+    while (true) {
+      long position = reserved.get();
+      if (anchor.get().timeOf(position) > now) {
+        return false;
+      }
+      if (reserved.compareAndSet(position, position + permits)) {
+        catchUp(position, now);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Change the rate. Permits that are due by now keep their times, and the rest of the backlog is
+   * repaid at the new rate. A rate of 0 blocks every permit that isn't already due.
+   */
+  synchronized void setRate(double permitsPerSecond) {
+    long now = System.nanoTime();
+    catchUp(reserved.get(), now);
+    double interval = interval(permitsPerSecond);
+    Anchor current;
+    do {
+      current = anchor.get();
+    } while (!anchor.compareAndSet(current, new Anchor(now, current.positionAt(now), interval)));
+    rate = permitsPerSecond;
+  }
+
+  double rate() {
+    return rate;
+  }
+
+  private long await(long permits, long now) {
+    long position = reserved.getAndAdd(permits);
+    catchUp(position, now);
+    long due;
+    while ((due = anchor.get().timeOf(position)) - now > 0) {
+      LockSupport.parkNanos(Math.min(due - now, MAX_PARK_NANOS));
+      now = System.nanoTime();
+    }
+    return due;
+  }
+
+  // if the schedule has fallen further behind the clock than the tolerance
+  // (e.g. while callers were idle), move it forward so that the unused time
+  // isn't banked as a burst
+  private void catchUp(long position, long now) {
+    if (toleranceNanos == Long.MAX_VALUE) {
+      return;
+    }
+    long earliest = now - toleranceNanos;
+    Anchor current;
+    while (!(current = anchor.get()).blocked() && current.timeOf(position) < earliest) {
+      if (anchor.compareAndSet(current, new Anchor(earliest, position, current.intervalNanos))) {
+        return;
+      }
+    }
+  }
+
+  private static double interval(double permitsPerSecond) {
+    return permitsPerSecond > 0 ? 1e9 / permitsPerSecond : Double.POSITIVE_INFINITY;
+  }
+}
@@ -1,31 +1,130 @@
 package io.waveshaper.syncable;
 
 import com.google.common.util.concurrent.RateLimiter;
+import io.waveshaper.feedback.RateController;
+import io.waveshaper.metrics.MetricsRecorder;
 import io.waveshaper.waveforms.Oscillator;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class WaveformRateLimiter implements Syncable {
+  /** The default amount of bytes that are charged at a time in weighted mode. */
+  public static final int DEFAULT_QUANTUM = 64 * 1024;
+
+  // how far the weighted schedule can fall behind the clock before it stops
+  // catching up. this absorbs oversleeping in parkNanos, which would otherwise
+  // cap the rate of small payloads
+  private static final long TOLERANCE_NANOS = 1_000_000L;
+
   private final Oscillator osc;
-  private RateLimiter limiter;
-  private int totalAcquired = 0;
+  private final RateController controller;
+  private volatile RateLimiter limiter;
+
+  // in weighted mode, the waveform sets bytes per second, and permits are
+  // charged in chunks of at most `quantum` bytes. guava's RateLimiter truncates
+  // waits to whole microseconds, which makes small payloads free at GB/s rates,
+  // so weighted mode schedules chunks itself (GCRA) instead
+  private final boolean weighted;
+  private final int quantum;
+  private final PermitSchedule schedule;
+
+  // counters for the current tick. these are lock-free, since they're updated
+  // on every acquire
+  private final LongAdder permitsAcquired = new LongAdder();
+  private final LongAdder eventsAcquired = new LongAdder();
   private Instant start = Instant.now();
 
+  // the schedule that acquireScheduled() follows. it keeps the whole backlog,
+  // and starts with the first scheduled permit so that time spent before then
+  // isn't owed
+  private volatile PermitSchedule intended;
+  // the rate in effect, after the controller was applied
+  private double effectiveRate = 1.0;
+
   // Store the previous rate and eps
   private double currentRate = 0.0;
+  private double targetRate = 0.0;
   private double eps = 0.0;
+  private double bytesPerSecond = 0.0;
 
   // Consumer to hold the callback function
   private Consumer<WaveformRateLimiter> callback;
 
+  // Recorder for hot path metrics
+  private volatile MetricsRecorder metrics = MetricsRecorder.NOOP;
+
   public static WaveformRateLimiter create(Oscillator osc) {
-    return new WaveformRateLimiter(osc);
+    return new WaveformRateLimiter(osc, RateController.NONE, false, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a rate limiter whose rate is shaped by the provided controller before it is applied.
+   * This allows the effective rate to be held below the waveform while the target system is
+   * saturated.
+   *
+   * @param osc the oscillator that produces the target rate
+   * @param controller the controller that caps the target rate
+   * @return a rate limiter that is synchronized with the oscillator
+   */
+  public static WaveformRateLimiter create(Oscillator osc, RateController controller) {
+    return new WaveformRateLimiter(osc, controller, false, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a rate limiter that shapes bytes per second rather than events per second. Each call to
+   * {@link #acquire(int)} is charged by the size of its payload, in chunks of at most {@link
+   * #DEFAULT_QUANTUM} bytes. Chunking lets small payloads interleave with large ones, so that a
+   * single huge payload does not starve everything queued behind it.
+   *
+   * @param osc the oscillator that produces the target rate, in bytes per second
+   * @return a weighted rate limiter that is synchronized with the oscillator
+   */
+  public static WaveformRateLimiter createWeighted(Oscillator osc) {
+    return createWeighted(osc, DEFAULT_QUANTUM);
+  }
+
+  /**
+   * Create a rate limiter that shapes bytes per second rather than events per second.
+   *
+   * @param osc the oscillator that produces the target rate, in bytes per second
+   * @param quantum the maximum number of bytes that are charged at a time
+   * @return a weighted rate limiter that is synchronized with the oscillator
+   */
+  public static WaveformRateLimiter createWeighted(Oscillator osc, int quantum) {
+    return createWeighted(osc, RateController.NONE, quantum);
+  }
+
+  /**
+   * Create a rate limiter that shapes bytes per second, and whose rate is shaped by the provided
+   * controller before it is applied.
+   *
+   * @param osc the oscillator that produces the target rate, in bytes per second
+   * @param controller the controller that caps the target rate
+   * @param quantum the maximum number of bytes that are charged at a time
+   * @return a weighted rate limiter that is synchronized with the oscillator
+   */
+  public static WaveformRateLimiter createWeighted(
+      Oscillator osc, RateController controller, int quantum) {
+    if (quantum <= 0) {
+      throw new IllegalArgumentException("The quantum must be positive");
+    }
+    return new WaveformRateLimiter(osc, controller, true, quantum);
   }
 
-  private WaveformRateLimiter(Oscillator osc_) {
+  private WaveformRateLimiter(
+      Oscillator osc_, RateController controller_, boolean weighted_, int quantum_) {
     osc = osc_;
-    limiter = RateLimiter.create(1);
+    controller = controller_;
+    weighted = weighted_;
+    quantum = quantum_;
+    if (weighted) {
+      schedule = new PermitSchedule(1, TOLERANCE_NANOS);
+    } else {
+      schedule = null;
+      limiter = RateLimiter.create(1);
+    }
     osc.syncWith(this);
     osc.startIfNotRunning();
   }
@@ -37,8 +136,15 @@ public class WaveformRateLimiter implements Syncable {
       // log the previous rate + events per second (eps)
       Instant finished = Instant.now();
       double elapsed = Duration.between(start, finished).toMillis();
-      this.eps = totalAcquired / elapsed * 1000;
-      this.currentRate = limiter.getRate();
+      long permits = permitsAcquired.sumThenReset();
+      long events = eventsAcquired.sumThenReset();
+      this.eps = (weighted ? events : permits) / elapsed * 1000;
+      this.bytesPerSecond = weighted ? permits / elapsed * 1000 : 0.0;
+      this.currentRate = weighted ? schedule.rate() : limiter.getRate();
+      // in weighted mode, the waveform is in bytes per second, so report the
+      // delivered rate in the same unit as the target
+      metrics.recordDeliveredRate(weighted ? bytesPerSecond : eps);
+      metrics.recordTargetRate(value);
       /*!
        * Update the rate limiter. Note: we initially tried using
        * limiter.setRate(value), but according to the guava Javadocs:
@@ -52,8 +158,19 @@ public class WaveformRateLimiter implements Syncable {
        *
        * @link https://github.com/google/guava/issues/3220
        */
-      limiter = RateLimiter.create(value);
-      totalAcquired = 0;
+      this.targetRate = value;
+      double rate = controller.limit(value);
+      if (weighted) {
+        // outstanding reservations are repaid at the new rate, and a rate of 0
+        // holds chunks back until the rate recovers
+        schedule.setRate(rate);
+      } else {
+        limiter = RateLimiter.create(rate);
+      }
+      effectiveRate = rate;
+      if (intended != null) {
+        intended.setRate(rate);
+      }
       start = Instant.now();
 
       // Invoke the callback if it has been registered
@@ -67,26 +184,101 @@ public class WaveformRateLimiter implements Syncable {
     return acquire(1);
   }
 
+  /**
+   * Acquire the provided number of permits, blocking until they are available. In weighted mode,
+   * the number of permits is the size of the payload in bytes.
+   *
+   * @param permits the number of permits to acquire
+   * @return the time spent sleeping, in seconds
+   */
   public double acquire(int permits) {
-    double acquired = limiter.acquire(permits);
-    synchronized (this) {
-      totalAcquired += permits;
+    double acquired;
+    if (weighted) {
+      checkPermits(permits);
+      acquired = schedule.acquire(Math.min(permits, quantum));
+      for (int remaining = permits - quantum; remaining > 0; remaining -= quantum) {
+        acquired += schedule.acquire(Math.min(remaining, quantum));
+      }
+    } else {
+      acquired = limiter.acquire(permits);
     }
+    metrics.recordPermitWait((long) (acquired * 1e9));
+    permitsAcquired.add(permits);
+    eventsAcquired.increment();
     return acquired;
   }
 
+  /**
+   * Acquire a single permit, and return the time at which the permit was supposed to be issued
+   * according to the waveform. Since {@link #acquire()} blocks, a stall in the system under test
+   * delays the issuance of the next request. Measuring latency from the intended time, instead of
+   * the time the request was actually sent, avoids coordinated omission.
+   *
+   * @return the intended send time of the permit, as a {@link System#nanoTime()} value
+   */
+  public long acquireScheduled() {
+    return acquireScheduled(1);
+  }
+
+  /**
+   * Acquire the provided number of permits (or bytes, in weighted mode), and return the time at
+   * which they were supposed to be issued according to the waveform. Scheduled permits follow
+   * their own schedule, which starts with the first call. A caller that falls behind it (e.g.
+   * during a stall) isn't made to wait until it catches up, so the stall's backlog drains instead
+   * of delaying every later request.
+   *
+   * @param permits the number of permits to acquire
+   * @return the intended send time of the permits, as a {@link System#nanoTime()} value
+   */
+  public long acquireScheduled(int permits) {
+    checkPermits(permits);
+    long start = System.nanoTime();
+    long due = intendedSchedule().acquireDue(permits);
+    metrics.recordPermitWait(Math.max(0, System.nanoTime() - start));
+    permitsAcquired.add(permits);
+    eventsAcquired.increment();
+    return due;
+  }
+
   public boolean tryAcquire() {
     return tryAcquire(1);
   }
 
   public boolean tryAcquire(int permits) {
-    boolean acquired = limiter.tryAcquire(permits);
+    boolean acquired;
+    if (weighted) {
+      checkPermits(permits);
+      acquired = schedule.tryAcquire(permits);
+    } else {
+      acquired = limiter.tryAcquire(permits);
+    }
     if (acquired) {
+      permitsAcquired.add(permits);
+      eventsAcquired.increment();
+    } else {
+      metrics.recordRejection();
+    }
+    return acquired;
+  }
+
+  private PermitSchedule intendedSchedule() {
+    PermitSchedule schedule = intended;
+    if (schedule == null) {
       synchronized (this) {
-        totalAcquired += permits;
+        if (intended == null) {
+          intended = new PermitSchedule(effectiveRate, Long.MAX_VALUE);
+        }
+        schedule = intended;
       }
     }
-    return acquired;
+    return schedule;
+  }
+
+  // match guava's validation, so both modes reject the same requests
+  private static void checkPermits(int permits) {
+    if (permits <= 0) {
+      throw new IllegalArgumentException("Requested permits (" + permits + ") must be positive");
+    }
   }
 
   // Getter for previous rate
@@ -94,15 +286,40 @@ public class WaveformRateLimiter implements Syncable {
     return currentRate;
   }
 
-  // Getter for events per second (eps)
+  // Getter for the controller that caps the rate. drivers report outcomes to it
+  // by default
+  public RateController getController() {
+    return controller;
+  }
+
+  // Getter for the rate produced by the oscillator, before the controller was applied
+  public double getTargetRate() {
+    return targetRate;
+  }
+
+  // Getter for events per second (eps). in weighted mode, this is the number of
+  // acquire calls per second, regardless of their size
   public double getEps() {
     return eps;
   }
 
+  // Getter for bytes per second. this is only tracked in weighted mode
+  public double getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public boolean weighted() {
+    return weighted;
+  }
+
   public void registerCallback(Consumer<WaveformRateLimiter> callback) {
       this.callback = callback;
   }
 
+  public void registerMetrics(MetricsRecorder metrics) {
+    this.metrics = metrics;
+  }
+
 
   public boolean updating() {
     return osc.running() && osc.hasNext();
@@ -1,9 +1,13 @@
 package io.waveshaper.waveforms;
 
+import io.waveshaper.metrics.MetricsRecorder;
 import io.waveshaper.syncable.Syncable;
 import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -14,19 +18,36 @@ import java.util.stream.StreamSupport;
 /**
  * An Oscillator is responsible for repeating {@link io.waveshaper.waveforms.Waveform}s. This class
  * utilizes the builder pattern for constructing Oscillator instances.
+ *
+ * <p>The position within the waveform is tracked with a 64-bit {@link PhaseAccumulator}, so an
+ * oscillator can run indefinitely, and a cycle does not need to span a whole number of samples.
+ * The waveform, range and frequency can be changed while the oscillator is running (see {@link
+ * #reconfigure()}).
  */
 public class Oscillator implements Iterator<Double> {
-  private final Waveform waveform;
   private final int cycles;
-  private final double rangeMin;
-  private final double rangeMax;
   private final int sampleRate;
   private final Duration sampleDuration;
+  private final long totalSamples;
+  private final boolean forever;
+  private final MetricsRecorder metrics;
+
+  // a pre-rendered copy of the waveform. when set, samples are read from the
+  // schedule rather than computed
+  private final RateSchedule schedule;
 
   // used by the iterator
-  private int currentPosition = 0;
+  private long currentPosition = 0;
+  private final PhaseAccumulator phase;
+
+  // the settings used for sampling. reconfigure() publishes new settings to
+  // pending, and they're picked up at the start of the next sample
+  private volatile Settings pending;
+  private Settings settings;
 
-  private int horizontalShift;
+  // the signal being faded out, if a crossfade is in progress
+  private Blend fadingOut;
+  private double fadeProgress;
 
   // synchronized output devices for the oscillator signal
   private final HashSet<Syncable> syncables = new HashSet<>();
@@ -36,26 +57,45 @@ public class Oscillator implements Iterator<Double> {
   // make the constructor private since we're using the
   // builder pattern
   private Oscillator(Builder builder) {
-    this.waveform = builder.waveform;
     this.cycles = builder.cycles;
-    this.rangeMin = builder.rangeMin;
-    this.rangeMax = builder.rangeMax;
     this.sampleRate = builder.sampleRate;
     this.sampleDuration = builder.sampleDuration;
-    this.horizontalShift = builder.horizontalShift + (int) Math.ceil((double) sampleRate / 2);
+    this.metrics = builder.metrics;
+    this.schedule = builder.schedule;
+    double samplesPerCycle =
+        builder.period == null
+            ? sampleRate
+            : (double) builder.period.toNanos() / sampleDuration.toNanos();
+    // built-in shapes are swapped for their shared instances, so oscillators
+    // don't hold on to their own copies
+    Waveform waveform = Waveforms.canonical(builder.waveformSupplier.get());
+    this.settings = new Settings(waveform, builder.rangeMin, builder.rangeMax, samplesPerCycle, 0);
+    this.pending = settings;
+    this.forever = builder.forever;
+    this.totalSamples = forever ? Long.MAX_VALUE : (long) Math.ceil(cycles * samplesPerCycle);
+    // start half way through the cycle, so that the waveform begins at its minimum
+    long horizontalShift = builder.horizontalShift + (long) Math.ceil(samplesPerCycle / 2);
+    this.phase = new PhaseAccumulator(samplesPerCycle, horizontalShift);
   }
 
   public static class Builder {
-    private Waveform waveform = new SineWave();
+    private Supplier<Waveform> waveformSupplier = Waveforms::sine;
     private int cycles = 1;
     private double rangeMin = -1;
     private double rangeMax = 1;
     private int sampleRate = 100;
     private Duration sampleDuration = Duration.ofMillis(0);
     private int horizontalShift = 0;
+    private Duration period;
+    private boolean forever = false;
+    private MetricsRecorder metrics = MetricsRecorder.NOOP;
+    private RateSchedule schedule;
 
+    // the supplier is called when the oscillator is built. prefer the suppliers
+    // in Waveforms (e.g. Waveforms::sine), which return shared instances instead
+    // of allocating a new waveform for every oscillator
     public Builder waveform(Supplier<Waveform> waveformSupplier) {
-      this.waveform = waveformSupplier.get();
+      this.waveformSupplier = waveformSupplier;
       return this;
     }
 
@@ -64,6 +104,26 @@ public class Oscillator implements Iterator<Double> {
       return this;
     }
 
+    /**
+     * Set the duration of a single cycle directly, instead of using the sample rate. The period
+     * does not need to be a whole number of samples, which allows for fractional frequencies (e.g.
+     * a 24 hour cycle that is sampled every 7 seconds). Requires a non-zero sample duration.
+     *
+     * @param period the duration of a single cycle
+     * @return this builder
+     */
+    public Builder period(Duration period) {
+      this.period = period;
+      return this;
+    }
+
+    // keep oscillating until the process exits, instead of stopping after the
+    // configured number of cycles
+    public Builder forever() {
+      this.forever = true;
+      return this;
+    }
+
     public Builder horizontalShift(int horizontalShift) {
       this.horizontalShift = horizontalShift;
       return this;
@@ -85,14 +145,240 @@ public class Oscillator implements Iterator<Double> {
       return this;
     }
 
+    public Builder metrics(MetricsRecorder metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Replay a pre-rendered schedule instead of computing the waveform on every tick. This
+     * overrides the waveform, cycles, range, sample rate, sample duration, and horizontal shift.
+     *
+     * @param schedule the schedule to replay
+     * @return this builder
+     */
+    public Builder schedule(RateSchedule schedule) {
+      this.schedule = schedule;
+      this.cycles = schedule.cycles();
+      this.sampleRate = schedule.sampleRate();
+      this.sampleDuration = schedule.sampleDuration();
+      this.period = null;
+      return this;
+    }
+
+    /**
+     * Render the configured waveform into an immutable schedule. The schedule can be reused by any
+     * number of oscillators (see {@link #schedule(RateSchedule)}), so that identical tests can be
+     * run without computing the waveform on each tick. When a cycle spans a fractional number of
+     * samples, every sample is rendered, so the oscillator must not run forever.
+     *
+     * @return the rendered schedule
+     */
+    public RateSchedule compile() {
+      if (schedule != null) {
+        return schedule;
+      }
+      Oscillator osc = new Oscillator(this);
+      double samplesPerCycle = osc.settings.samplesPerCycle;
+      if (samplesPerCycle == Math.rint(samplesPerCycle) && samplesPerCycle <= Integer.MAX_VALUE) {
+        // a single cycle is enough, since every cycle is identical
+        return new RateSchedule(osc.render((int) samplesPerCycle), cycles, sampleDuration);
+      }
+      if (forever || osc.totalSamples > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Too many samples to render");
+      }
+      return new RateSchedule(osc.render((int) osc.totalSamples), 1, sampleDuration);
+    }
+
     public Oscillator build() {
+      if (period != null && sampleDuration.isZero()) {
+        throw new IllegalStateException("A sample duration is required when setting a period");
+      }
       return new Oscillator(this);
     }
   }
 
+  /** An immutable snapshot of the parameters that can be changed while the oscillator runs. */
+  private static final class Settings {
+    private final Waveform waveform;
+    private final double rangeMin;
+    private final double rangeMax;
+    // the number of samples in a single cycle, which may be fractional
+    private final double samplesPerCycle;
+    // the number of samples to crossfade over when these settings are applied
+    private final int crossfade;
+
+    Settings(
+        Waveform waveform,
+        double rangeMin,
+        double rangeMax,
+        double samplesPerCycle,
+        int crossfade) {
+      this.waveform = waveform;
+      this.rangeMin = rangeMin;
+      this.rangeMax = rangeMax;
+      this.samplesPerCycle = samplesPerCycle;
+      this.crossfade = crossfade;
+    }
+
+    double sample(double step) {
+      return waveform.getAmplitude(step).getValue(rangeMin, rangeMax);
+    }
+  }
+
+  /**
+   * A weighted sum of settings, which is faded out during a crossfade. Blends are bounded, so
+   * reconfiguring repeatedly during a crossfade can't make sampling any slower.
+   */
+  private static final class Blend {
+    // sources with less weight than this are dropped
+    private static final double MIN_WEIGHT = 1e-6;
+    private static final int MAX_SOURCES = 8;
+
+    private final Settings[] sources;
+    // these always sum to 1
+    private final double[] weights;
+
+    Blend(Settings[] sources, double[] weights) {
+      this.sources = sources;
+      this.weights = weights;
+    }
+
+    double sample(double step) {
+      double value = 0;
+      for (int i = 0; i < sources.length; i++) {
+        value += sources[i].sample(step) * weights[i];
+      }
+      return value;
+    }
+
+    // the blend of this and the provided settings, at the provided progress
+    Blend mix(Settings to, double progress) {
+      List<Settings> mixedSources = new ArrayList<>();
+      List<Double> mixedWeights = new ArrayList<>();
+      boolean found = false;
+      for (int i = 0; i < sources.length; i++) {
+        double weight = weights[i] * (1 - progress);
+        if (sources[i] == to) {
+          weight += progress;
+          found = true;
+        }
+        mixedSources.add(sources[i]);
+        mixedWeights.add(weight);
+      }
+      if (!found) {
+        mixedSources.add(to);
+        mixedWeights.add(progress);
+      }
+      // drop the lightest sources, and spread their weight over the rest
+      int lightest;
+      while ((lightest = lightest(mixedWeights)) >= 0
+          && (mixedWeights.get(lightest) < MIN_WEIGHT || mixedWeights.size() > MAX_SOURCES)) {
+        mixedSources.remove(lightest);
+        mixedWeights.remove(lightest);
+      }
+      double total = 0;
+      for (double weight : mixedWeights) {
+        total += weight;
+      }
+      double[] normalized = new double[mixedWeights.size()];
+      for (int i = 0; i < normalized.length; i++) {
+        normalized[i] = mixedWeights.get(i) / total;
+      }
+      return new Blend(mixedSources.toArray(new Settings[0]), normalized);
+    }
+
+    // the index of the lightest source, or -1 if only one source is left
+    private static int lightest(List<Double> weights) {
+      if (weights.size() <= 1) {
+        return -1;
+      }
+      int lightest = 0;
+      for (int i = 1; i < weights.size(); i++) {
+        if (weights.get(i) < weights.get(lightest)) {
+          lightest = i;
+        }
+      }
+      return lightest;
+    }
+  }
+
+  /**
+   * A set of changes to apply to a running oscillator. Changes are published atomically when
+   * {@link #apply()} is called, and take effect at the start of the next sample. The phase of the
+   * waveform is preserved, so the signal stays continuous when the frequency changes.
+   */
+  public class Reconfiguration {
+    private Supplier<Waveform> waveformSupplier;
+    private double rangeMin;
+    private double rangeMax;
+    private double samplesPerCycle;
+    private int crossfade = 0;
+
+    private Reconfiguration(Settings base) {
+      this.waveformSupplier = () -> base.waveform;
+      this.rangeMin = base.rangeMin;
+      this.rangeMax = base.rangeMax;
+      this.samplesPerCycle = base.samplesPerCycle;
+    }
+
+    public Reconfiguration waveform(Supplier<Waveform> waveformSupplier) {
+      this.waveformSupplier = waveformSupplier;
+      return this;
+    }
+
+    public Reconfiguration range(double min, double max) {
+      this.rangeMin = min;
+      this.rangeMax = max;
+      return this;
+    }
+
+    public Reconfiguration sampleRate(int sampleRate) {
+      this.samplesPerCycle = sampleRate;
+      return this;
+    }
+
+    public Reconfiguration period(Duration period) {
+      if (sampleDuration.isZero()) {
+        throw new IllegalStateException("A sample duration is required when setting a period");
+      }
+      this.samplesPerCycle = (double) period.toNanos() / sampleDuration.toNanos();
+      return this;
+    }
+
+    // blend the old and new settings over the provided number of samples, rather
+    // than switching on the next sample
+    public Reconfiguration crossfade(int samples) {
+      this.crossfade = samples;
+      return this;
+    }
+
+    public void apply() {
+      // validate the frequency before publishing anything
+      PhaseAccumulator.tuningWord(samplesPerCycle);
+      Waveform waveform = Waveforms.canonical(waveformSupplier.get());
+      pending = new Settings(waveform, rangeMin, rangeMax, samplesPerCycle, crossfade);
+    }
+  }
+
+  /**
+   * Start changing the parameters of this oscillator. The changes can be applied while the
+   * oscillator is running, without stopping it or interrupting any synchronized outputs. Note: the
+   * number of samples the oscillator produces is fixed when it is built. If more than one thread
+   * reconfigures the oscillator at once, the last change to be applied wins.
+   *
+   * @return a reconfiguration, which is based on the most recently applied settings
+   */
+  public Reconfiguration reconfigure() {
+    if (schedule != null) {
+      throw new IllegalStateException("Oscillators that replay a schedule cannot be reconfigured");
+    }
+    return new Reconfiguration(pending);
+  }
+
   @Override
   public boolean hasNext() {
-    return currentPosition < cycles * sampleRate;
+    return currentPosition < totalSamples;
   }
 
   @Override
@@ -100,12 +386,90 @@ public class Oscillator implements Iterator<Double> {
     if (!hasNext()) {
       throw new RuntimeException("Tried to sample a fully sampled waveform");
     }
-    double adjustedPosition = currentPosition + horizontalShift;
-    double step = (double) (adjustedPosition % sampleRate) / sampleRate;
+    if (schedule != null) {
+      long position;
+      synchronized (this) {
+        position = currentPosition++;
+      }
+      return schedule.get(position);
+    }
     synchronized (this) {
       currentPosition++;
+      Settings latest = pending;
+      if (latest != settings) {
+        swap(latest);
+      }
+      double step = phase.next();
+      double value = settings.sample(step);
+      if (fadingOut != null) {
+        value = fadingOut.sample(step) * (1 - fadeProgress) + value * fadeProgress;
+        fadeProgress += 1.0 / settings.crossfade;
+        if (fadeProgress >= 1) {
+          fadingOut = null;
+        }
+      }
+      return value;
+    }
+  }
+
+  private void swap(Settings latest) {
+    if (latest.samplesPerCycle != settings.samplesPerCycle) {
+      phase.retune(latest.samplesPerCycle);
+    }
+    if (latest.crossfade > 0) {
+      if (fadingOut != null) {
+        // a crossfade is already in progress, so fade out of the current blend
+        // (frozen where it is) rather than its target, to keep the output continuous
+        fadingOut = fadingOut.mix(settings, fadeProgress);
+      } else {
+        fadingOut = new Blend(new Settings[] {settings}, new double[] {1.0});
+      }
+      fadeProgress = 0;
+    } else {
+      fadingOut = null;
     }
-    return waveform.getAmplitude(step).getValue(rangeMin, rangeMax);
+    settings = latest;
+  }
+
+  private float[] render(int samples) {
+    float[] rendered = new float[samples];
+    for (int i = 0; i < samples; i++) {
+      rendered[i] = (float) settings.sample(phase.offsetAt(i));
+    }
+    return rendered;
+  }
+
+  /**
+   * Get the cumulative number of permits produced by this oscillator's signal over time, starting
+   * from the beginning of its first sample. See {@link PermitCurve}. If the oscillator has been
+   * reconfigured, the curve uses the most recently applied settings.
+   *
+   * @return the oscillator's permit curve
+   * @throws IllegalArgumentException if the oscillator's range includes negative rates
+   */
+  public PermitCurve permitCurve() {
+    if (schedule != null) {
+      double periodNanos = (double) schedule.sampleRate() * sampleDuration.toNanos();
+      return schedule.permitCurve(periodNanos);
+    }
+    Settings current = pending;
+    double periodNanos = current.samplesPerCycle * sampleDuration.toNanos();
+    return new PermitCurve(
+        current.waveform, current.rangeMin, current.rangeMax, periodNanos, phase.initialOffset());
+  }
+
+  /**
+   * Get the total amount of time it takes to sample every cycle of the waveform.
+   *
+   * @return the duration of the oscillator's signal, or {@link ChronoUnit#FOREVER} if the
+   *     oscillator never stops
+   */
+  public Duration duration() {
+    return forever ? ChronoUnit.FOREVER.getDuration() : sampleDuration.multipliedBy(totalSamples);
+  }
+
+  public boolean infinite() {
+    return forever;
   }
 
   public Stream<Double> stream() {
@@ -133,17 +497,29 @@ public class Oscillator implements Iterator<Double> {
     // signal across all output devices on a configurable, periodic schedule
     ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+    // used for measuring how late each tick fires
+    long periodNanos = sampleDuration.toNanos();
+    long startNanos = System.nanoTime();
+    long[] ticks = {0};
+
     // Iterate through each output device, and call the onSignalChange method.
     // WARNING: the implementation below is susceptible to head-of-line blocking
     // TODO: improve this implementation
     Runnable synchronizer =
         () -> {
           if (hasNext()) {
+            long dispatchStart = System.nanoTime();
+            if (metrics.enabled()) {
+              metrics.recordTickLateness(dispatchStart - (startNanos + ticks[0]++ * periodNanos));
+            }
             // broadcast the new amplitude to all syncable outputs
             Double amplitude = next();
             for (Syncable syncable : syncables) {
               syncable.onSignalChange(amplitude);
             }
+            if (metrics.enabled()) {
+              metrics.recordDispatchLatency(System.nanoTime() - dispatchStart);
+            }
           } else {
             // finished iterating through the waveform
             scheduler.shutdown();
@@ -0,0 +1,161 @@
+package io.waveshaper.waveforms;
+
+/**
+ * The cumulative number of permits issued by a rate that follows a waveform, i.e. the integral of
+ * the oscillator's output over time, along with its inverse. This allows the deadline of the Nth
+ * permit to be computed directly, instead of accumulating inter-permit delays (and their rounding
+ * errors) one permit at a time.
+ *
+ * <p>Note: the curve follows the continuous waveform, whereas an {@link Oscillator} holds each
+ * sample for the duration of a tick.
+ */
+public class PermitCurve {
+  // the number of entries in the per-cycle prefix table
+  private static final int TABLE_SIZE = 1024;
+
+  private final Waveform waveform;
+  private final double rangeMin;
+  private final double rangeMax;
+  private final double periodNanos;
+  private final double initialPhase;
+
+  // the cumulative area (in rate * cycles) at each of TABLE_SIZE evenly spaced
+  // points of a cycle
+  private final double[] table = new double[TABLE_SIZE + 1];
+  private final double areaPerCycle;
+  private final double initialArea;
+
+  /**
+   * Constructor
+   *
+   * @param waveform the shape of the rate
+   * @param rangeMin the minimum rate, in permits per second. the rate must never be negative
+   * @param rangeMax the maximum rate, in permits per second
+   * @param periodNanos the duration of a single cycle, in nanoseconds
+   * @param initialPhase the offset into the cycle at time zero, in cycles
+   * @throws IllegalArgumentException if the range includes negative rates
+   */
+  public PermitCurve(
+      Waveform waveform,
+      double rangeMin,
+      double rangeMax,
+      double periodNanos,
+      double initialPhase) {
+    if (Math.min(rangeMin, rangeMax) < 0) {
+      // a negative rate makes the permit count go backwards, so deadlines can't
+      // be computed
+      throw new IllegalArgumentException("The range of a permit curve must not be negative");
+    }
+    this.waveform = waveform;
+    this.rangeMin = rangeMin;
+    this.rangeMax = rangeMax;
+    this.periodNanos = periodNanos;
+    this.initialPhase = initialPhase;
+    for (int i = 0; i <= TABLE_SIZE; i++) {
+      table[i] = areaWithinCycle((double) i / TABLE_SIZE);
+    }
+    this.areaPerCycle = table[TABLE_SIZE];
+    this.initialArea = area(initialPhase);
+  }
+
+  /**
+   * Get the number of permits that should have been issued after the provided amount of time.
+   *
+   * @param elapsedNanos the time since the curve started, in nanoseconds
+   * @return the cumulative number of permits
+   */
+  public double permitsAt(long elapsedNanos) {
+    return (area(initialPhase + elapsedNanos / periodNanos) - initialArea) * periodSeconds();
+  }
+
+  /**
+   * Get the time at which a permit is due.
+   *
+   * @param permit the zero-based index of the permit
+   * @return the permit's deadline, in nanoseconds since the curve started, or {@link
+   *     Long#MAX_VALUE} if the permit will never be issued
+   */
+  public long deadlineNanos(long permit) {
+    if (areaPerCycle <= 0) {
+      return permit == 0 ? 0 : Long.MAX_VALUE;
+    }
+    double target = initialArea + permit / periodSeconds();
+    double cycles = Math.floor(target / areaPerCycle);
+    double remaining = target - cycles * areaPerCycle;
+
+    // find the segment of the prefix table that contains the remaining area,
+    // and then solve for the exact offset within it
+    int segment = search(remaining);
+    double lo = (double) segment / TABLE_SIZE;
+    double hi = (double) (segment + 1) / TABLE_SIZE;
+    double offset = solve(remaining, lo, hi, table[segment], table[segment + 1]);
+    double phase = cycles + offset;
+    return Math.max(0, Math.round((phase - initialPhase) * periodNanos));
+  }
+
+  /**
+   * Get the number of permits issued during a single cycle of the waveform.
+   *
+   * @return the number of permits per cycle
+   */
+  public double permitsPerCycle() {
+    return areaPerCycle * periodSeconds();
+  }
+
+  // find the offset within [lo, hi] at which the area reaches the target, using
+  // newton's method (the rate is the derivative of the area), and falling back
+  // to bisection whenever a newton step leaves the bracket
+  private double solve(double target, double lo, double hi, double areaLo, double areaHi) {
+    double x = areaHi > areaLo ? lo + (hi - lo) * (target - areaLo) / (areaHi - areaLo) : lo;
+    for (int i = 0; i < 64; i++) {
+      double error = areaWithinCycle(x) - target;
+      if (error < 0) {
+        lo = x;
+      } else {
+        hi = x;
+      }
+      if (Math.abs(error) < 1e-12 * Math.max(1, target) || hi - lo < 1e-15) {
+        break;
+      }
+      double rate = rateAt(x);
+      double next = rate > 0 ? x - error / rate : Double.NaN;
+      x = next > lo && next < hi ? next : (lo + hi) / 2;
+    }
+    return x;
+  }
+
+  // returns the last table index whose area is below the provided value
+  private int search(double value) {
+    int lo = 0;
+    int hi = TABLE_SIZE;
+    while (hi - lo > 1) {
+      int mid = (lo + hi) >>> 1;
+      if (table[mid] < value) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // the area under the rate between phase 0 and the provided phase
+  private double area(double phase) {
+    double cycles = Math.floor(phase);
+    return cycles * areaPerCycle + areaWithinCycle(phase - cycles);
+  }
+
+  // the area under the rate between the beginning of a cycle and the provided offset
+  private double areaWithinCycle(double offset) {
+    return ((rangeMax - rangeMin) * waveform.integral(offset) + (rangeMax + rangeMin) * offset) / 2;
+  }
+
+  // the rate at the provided offset, in permits per second
+  private double rateAt(double offset) {
+    return waveform.getAmplitude(offset).getValue(rangeMin, rangeMax);
+  }
+
+  private double periodSeconds() {
+    return periodNanos / 1e9;
+  }
+}
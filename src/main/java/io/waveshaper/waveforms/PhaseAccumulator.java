@@ -0,0 +1,106 @@
+package io.waveshaper.waveforms;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * A 64-bit phase accumulator, as used in direct digital synthesis (DDS). The phase is a fixed-point
+ * fraction of a cycle, where 2^64 is one full cycle, and it advances by a tuning word on each tick.
+ * Wrapping at the end of a cycle is handled by integer overflow, so there's no modulo or division
+ * on the hot path, the accumulator can run forever, and the period does not need to be a whole
+ * number of ticks. Note: this class is not thread safe
+ */
+public class PhaseAccumulator {
+  private static final BigDecimal ONE_CYCLE = new BigDecimal(2).pow(64);
+
+  private final long initialPhase;
+  private long phase;
+  private long tuningWord;
+
+  /**
+   * Constructor
+   *
+   * @param ticksPerCycle the number of ticks in a single cycle, which must be at least 1
+   * @param initialTicks the number of ticks to advance the initial phase by
+   */
+  public PhaseAccumulator(double ticksPerCycle, long initialTicks) {
+    this.tuningWord = tuningWord(ticksPerCycle);
+    this.initialPhase = initialTicks * tuningWord;
+    this.phase = initialPhase;
+  }
+
+  /**
+   * Compute the tuning word for a period. The word is rounded up, so that sampling exactly at a
+   * fraction of the period (e.g. half way through) never lands just before it. For whole numbers
+   * of ticks, the rounding error is less than 1 / 2^64 of a cycle per tick.
+   *
+   * @param ticksPerCycle the number of ticks in a single cycle, which must be at least 1
+   * @return the amount to advance the phase by on each tick
+   */
+  public static long tuningWord(double ticksPerCycle) {
+    if (!(ticksPerCycle >= 1) || Double.isInfinite(ticksPerCycle)) {
+      throw new IllegalArgumentException("A cycle must span at least one tick");
+    }
+    if (ticksPerCycle == Math.rint(ticksPerCycle) && ticksPerCycle <= Long.MAX_VALUE) {
+      // ceil(2^64 / n), using unsigned arithmetic
+      return Long.divideUnsigned(-1L, (long) ticksPerCycle) + 1;
+    }
+    return ONE_CYCLE
+        .divide(new BigDecimal(ticksPerCycle), 0, RoundingMode.CEILING)
+        .longValue();
+  }
+
+  /**
+   * Get the offset into the cycle for the current tick, and advance to the next tick.
+   *
+   * @return a number between 0 and 1, representing the distance from the beginning of the cycle
+   */
+  public double next() {
+    long current = phase;
+    phase += tuningWord;
+    return toOffset(current);
+  }
+
+  /**
+   * Get the offset into the cycle for an arbitrary tick, assuming the tuning word has never
+   * changed. This does not affect the accumulator's state.
+   *
+   * @param ticks the number of ticks since the accumulator was created
+   * @return a number between 0 and 1, representing the distance from the beginning of the cycle
+   */
+  public double offsetAt(long ticks) {
+    return toOffset(initialPhase + ticks * tuningWord);
+  }
+
+  /**
+   * Get the offset into the cycle for the next tick, without advancing.
+   *
+   * @return a number between 0 and 1
+   */
+  public double offset() {
+    return toOffset(phase);
+  }
+
+  /**
+   * Get the offset into the cycle when the accumulator was created.
+   *
+   * @return a number between 0 and 1
+   */
+  public double initialOffset() {
+    return toOffset(initialPhase);
+  }
+
+  /**
+   * Change the frequency. The phase is untouched, so the output remains continuous.
+   *
+   * @param ticksPerCycle the number of ticks in a single cycle, which must be at least 1
+   */
+  public void retune(double ticksPerCycle) {
+    this.tuningWord = tuningWord(ticksPerCycle);
+  }
+
+  // use the top 53 bits of the phase as the mantissa of a double in [0, 1)
+  private static double toOffset(long phase) {
+    return (phase >>> 11) * 0x1.0p-53;
+  }
+}
@@ -0,0 +1,166 @@
+package io.waveshaper.waveforms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * An immutable, pre-rendered copy of an {@link Oscillator}'s output. Only a single cycle of the
+ * waveform is stored, so a schedule takes {@code 4 * sampleRate} bytes regardless of how many
+ * cycles it spans, and any sample can be read by index in constant time.
+ *
+ * <p>Schedules can be shared by any number of oscillators, and can be written to a file and memory
+ * mapped elsewhere so that separate processes (or nodes) run exactly the same shape.
+ */
+public final class RateSchedule {
+  // "WSRS" in ascii
+  private static final int MAGIC = 0x57535253;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+
+  private final FloatBuffer cycle;
+  private final int sampleRate;
+  private final int cycles;
+  private final Duration sampleDuration;
+
+  RateSchedule(float[] cycle, int cycles, Duration sampleDuration) {
+    this(FloatBuffer.wrap(cycle.clone()).asReadOnlyBuffer(), cycles, sampleDuration);
+  }
+
+  private RateSchedule(FloatBuffer cycle, int cycles, Duration sampleDuration) {
+    this.cycle = cycle;
+    this.sampleRate = cycle.capacity();
+    this.cycles = cycles;
+    this.sampleDuration = sampleDuration;
+  }
+
+  /**
+   * Get the value of a single sample.
+   *
+   * @param index the position of the sample, starting from the beginning of the first cycle
+   * @return the value of the sample
+   */
+  public double get(long index) {
+    return cycle.get((int) (index % sampleRate));
+  }
+
+  /**
+   * Get the total number of samples in the schedule.
+   *
+   * @return the number of samples, across all cycles
+   */
+  public long size() {
+    return (long) cycles * sampleRate;
+  }
+
+  public int sampleRate() {
+    return sampleRate;
+  }
+
+  public int cycles() {
+    return cycles;
+  }
+
+  public Duration sampleDuration() {
+    return sampleDuration;
+  }
+
+  // view the schedule as a step function, with a precomputed integral, and
+  // build a PermitCurve from it. the samples are normalized to -1..1, and the
+  // curve's range maps them back, so that the range can be validated
+  PermitCurve permitCurve(double periodNanos) {
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    double[] prefix = new double[sampleRate + 1];
+    for (int i = 0; i < sampleRate; i++) {
+      double value = cycle.get(i);
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+      prefix[i + 1] = prefix[i] + value / sampleRate;
+    }
+    double low = min;
+    double scale = max > min ? 2 / (max - min) : 0;
+    double[] sums = prefix;
+    Waveform waveform =
+        new Waveform() {
+          @Override
+          public Amplitude getAmplitude(double offset) {
+            return new Amplitude((cycle.get(indexOf(offset)) - low) * scale - 1);
+          }
+
+          @Override
+          public double integral(double offset) {
+            int index = indexOf(offset);
+            double area = sums[index] + cycle.get(index) * (offset - (double) index / sampleRate);
+            return (area - low * offset) * scale - offset;
+          }
+        };
+    return new PermitCurve(waveform, min, max, periodNanos, 0);
+  }
+
+  private int indexOf(double offset) {
+    return Math.max(0, Math.min(sampleRate - 1, (int) (offset * sampleRate)));
+  }
+
+  /**
+   * Write this schedule to a file, so that it can be loaded with {@link #map(Path)}.
+   *
+   * @param path the file to write. it will be created or truncated
+   * @throws IOException if the file could not be written
+   */
+  public void writeTo(Path path) throws IOException {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(HEADER_BYTES + sampleRate * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(sampleRate).putInt(cycles);
+    buffer.putLong(sampleDuration.toNanos());
+    for (int i = 0; i < sampleRate; i++) {
+      buffer.putFloat(cycle.get(i));
+    }
+    buffer.flip();
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Memory map a schedule that was previously written with {@link #writeTo(Path)}. The samples are
+   * read directly from the page cache, so many processes can share a single copy.
+   *
+   * @param path the file to read
+   * @return the schedule stored in the file
+   * @throws IOException if the file could not be read, or is not a schedule
+   */
+  public static RateSchedule map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer =
+          channel
+              .map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+              .order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.remaining() < HEADER_BYTES
+          || buffer.getInt() != MAGIC
+          || buffer.getInt() != VERSION) {
+        throw new IOException("Not a rate schedule: " + path);
+      }
+      int sampleRate = buffer.getInt();
+      int cycles = buffer.getInt();
+      Duration sampleDuration = Duration.ofNanos(buffer.getLong());
+      if (buffer.remaining() != sampleRate * Float.BYTES) {
+        throw new IOException("Truncated rate schedule: " + path);
+      }
+      FloatBuffer cycle = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+      return new RateSchedule(cycle, cycles, sampleDuration);
+    }
+  }
+}
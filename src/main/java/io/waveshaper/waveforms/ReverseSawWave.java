@@ -8,7 +8,13 @@ package io.waveshaper.waveforms;
 public class ReverseSawWave extends SawWave {
   @Override
   public Amplitude getAmplitude(double step) {
-    double value = super.getAmplitude(step).getValue() * -1;
+    // computed directly, rather than negating the saw wave, to avoid an extra allocation
+    double value = 2 * (Math.round(step) - step);
     return new Amplitude(value);
   }
+
+  @Override
+  public double integral(double step) {
+    return -super.integral(step);
+  }
 }
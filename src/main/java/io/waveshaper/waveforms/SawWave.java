@@ -11,4 +11,10 @@ public class SawWave implements Waveform {
     double value = 2 * (step - Math.round(step));
     return new Amplitude(value);
   }
+
+  @Override
+  public double integral(double step) {
+    // the amplitude is 2x on the first half of the cycle, and 2x - 2 on the second
+    return step < 0.5 ? step * step : (step - 1) * (step - 1);
+  }
 }
@@ -13,4 +13,10 @@ public class SineWave implements Waveform {
     double value = Math.sin(Math.toRadians(angle % 360));
     return new Amplitude(value);
   }
+
+  @Override
+  public double integral(double step) {
+    // the amplitude is cos(2πx), so the integral is sin(2πx) / 2π
+    return Math.sin(2 * Math.PI * step) / (2 * Math.PI);
+  }
 }
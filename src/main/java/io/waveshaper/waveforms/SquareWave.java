@@ -11,4 +11,9 @@ public class SquareWave implements Waveform {
     double value = step < 0.5 ? 1 : -1;
     return new Amplitude(value);
   }
+
+  @Override
+  public double integral(double step) {
+    return step < 0.5 ? step : 1 - step;
+  }
 }
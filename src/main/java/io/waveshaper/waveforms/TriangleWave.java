@@ -11,4 +11,10 @@ public class TriangleWave implements Waveform {
     double value = 1 - 4 * Math.abs(Math.round(step) - step);
     return new Amplitude(value);
   }
+
+  @Override
+  public double integral(double step) {
+    // the amplitude is 1 - 4x on the first half of the cycle, and 4x - 3 on the second
+    return step < 0.5 ? step - 2 * step * step : 2 * step * step - 3 * step + 1;
+  }
 }
@@ -10,4 +10,25 @@ public interface Waveform {
    * @return the amplitude of the waveform at the provided offset
    */
   public Amplitude getAmplitude(double offset);
+
+  /**
+   * Get the area under a single cycle of the waveform, between the beginning of the cycle and the
+   * provided offset. This is used for computing the number of permits a rate limiter should issue
+   * over a period of time. The default implementation integrates the waveform numerically, so
+   * waveforms that are used at high rates should override it with a closed form.
+   *
+   * @param offset a number between 0 and 1, representing the distance from the beginning of the
+   *     waveform's cycle
+   * @return the integral of the raw amplitude between 0 and the provided offset
+   */
+  public default double integral(double offset) {
+    // composite simpson's rule, with a slice count proportional to the offset
+    int slices = 2 * Math.max(1, (int) Math.ceil(offset * 128));
+    double width = offset / slices;
+    double sum = getAmplitude(0).getValue() + getAmplitude(offset).getValue();
+    for (int i = 1; i < slices; i++) {
+      sum += (i % 2 == 0 ? 2 : 4) * getAmplitude(i * width).getValue();
+    }
+    return sum * width / 3;
+  }
 }
@@ -0,0 +1,288 @@
+package io.waveshaper.waveforms;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A registry of shared, immutable waveforms. The built-in shapes are stateless, so a single
+ * instance of each can be shared by any number of oscillators. Derived forms (inverted, shifted,
+ * scaled and wavetable versions of a shape) are cached by their parameters, so that building many
+ * oscillators from the same shape reuses the same evaluators instead of building new objects.
+ *
+ * <p>Only forms derived directly from the built-in shapes are cached, and the cache holds at most
+ * {@value #MAX_CACHED} of them (evicting the least recently used), so that varied parameters
+ * can't grow it without limit. Other derived forms are created on every call.
+ */
+public final class Waveforms {
+  private static final Waveform SINE = new SineWave();
+  private static final Waveform SAW = new SawWave();
+  private static final Waveform REVERSE_SAW = new ReverseSawWave();
+  private static final Waveform SQUARE = new SquareWave();
+  private static final Waveform TRIANGLE = new TriangleWave();
+
+  // the maximum number of derived forms to cache. the least recently used form
+  // is evicted once the cache is full. lookups only happen when oscillators are
+  // built, so a synchronized map is fine
+  static final int MAX_CACHED = 256;
+  private static final Map<Key, Waveform> DERIVED =
+      Collections.synchronizedMap(
+          new LinkedHashMap<Key, Waveform>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Waveform> eldest) {
+              return size() > MAX_CACHED;
+            }
+          });
+
+  private Waveforms() {}
+
+  public static Waveform sine() {
+    return SINE;
+  }
+
+  public static Waveform saw() {
+    return SAW;
+  }
+
+  public static Waveform reverseSaw() {
+    return REVERSE_SAW;
+  }
+
+  public static Waveform square() {
+    return SQUARE;
+  }
+
+  public static Waveform triangle() {
+    return TRIANGLE;
+  }
+
+  /**
+   * Get the shared instance of a waveform. Instances of the built-in shapes are replaced with their
+   * singletons, and any other waveform is returned as is.
+   *
+   * @param waveform a waveform
+   * @return the shared instance of the waveform, if there is one
+   */
+  public static Waveform canonical(Waveform waveform) {
+    // compare exact classes, since a subclass may change the shape
+    Class<?> type = waveform.getClass();
+    if (type == SineWave.class) {
+      return SINE;
+    } else if (type == SawWave.class) {
+      return SAW;
+    } else if (type == ReverseSawWave.class) {
+      return REVERSE_SAW;
+    } else if (type == SquareWave.class) {
+      return SQUARE;
+    } else if (type == TriangleWave.class) {
+      return TRIANGLE;
+    }
+    return waveform;
+  }
+
+  /**
+   * Get a waveform that is flipped vertically.
+   *
+   * @param waveform the waveform to invert
+   * @return the inverted waveform
+   */
+  public static Waveform inverted(Waveform waveform) {
+    return derive(waveform, Kind.INVERTED, 0);
+  }
+
+  /**
+   * Get a waveform that is shifted horizontally, so that it starts part way through its cycle.
+   *
+   * @param waveform the waveform to shift
+   * @param phase the fraction of a cycle to shift by. only the fractional part is used
+   * @return the shifted waveform
+   */
+  public static Waveform shifted(Waveform waveform, double phase) {
+    double fraction = phase - Math.floor(phase);
+    return fraction == 0 ? canonical(waveform) : derive(waveform, Kind.SHIFTED, fraction);
+  }
+
+  /**
+   * Get a waveform whose amplitude is multiplied by the provided factor. Amplitudes outside of -1
+   * and 1 are not clipped, so they'll fall outside of the oscillator's range.
+   *
+   * @param waveform the waveform to scale
+   * @param factor the amount to multiply the amplitude by
+   * @return the scaled waveform
+   */
+  public static Waveform scaled(Waveform waveform, double factor) {
+    return factor == 1 ? canonical(waveform) : derive(waveform, Kind.SCALED, factor);
+  }
+
+  /**
+   * Get a waveform that looks up its amplitude in a pre-computed table of one cycle, with linear
+   * interpolation between entries. This trades a little accuracy for speed when a waveform is
+   * expensive to compute. Integrals are still computed by the original waveform.
+   *
+   * @param waveform the waveform to tabulate
+   * @param size the number of entries in the table
+   * @return the tabulated waveform
+   */
+  public static Waveform wavetable(Waveform waveform, int size) {
+    if (size < 2) {
+      throw new IllegalArgumentException("A wavetable needs at least 2 entries");
+    }
+    return derive(waveform, Kind.WAVETABLE, size);
+  }
+
+  private static Waveform derive(Waveform waveform, Kind kind, double parameter) {
+    Waveform base = canonical(waveform);
+    if (!builtIn(base)) {
+      return kind.create(base, parameter);
+    }
+    Key key = new Key(base, kind, parameter);
+    return DERIVED.computeIfAbsent(key, k -> kind.create(base, parameter));
+  }
+
+  // the number of derived forms that are cached
+  static int cacheSize() {
+    return DERIVED.size();
+  }
+
+  private static boolean builtIn(Waveform waveform) {
+    return waveform == SINE
+        || waveform == SAW
+        || waveform == REVERSE_SAW
+        || waveform == SQUARE
+        || waveform == TRIANGLE;
+  }
+
+  private enum Kind {
+    INVERTED,
+    SHIFTED,
+    SCALED,
+    WAVETABLE;
+
+    Waveform create(Waveform base, double parameter) {
+      switch (this) {
+        case INVERTED:
+          return new Scaled(base, -1);
+        case SHIFTED:
+          return new Shifted(base, parameter);
+        case SCALED:
+          return new Scaled(base, parameter);
+        default:
+          return new Wavetable(base, (int) parameter);
+      }
+    }
+  }
+
+  // bases are compared by identity, since only the built-in shapes are cached
+  private static final class Key {
+    private final Waveform base;
+    private final Kind kind;
+    private final double parameter;
+
+    Key(Waveform base, Kind kind, double parameter) {
+      this.base = base;
+      this.kind = kind;
+      this.parameter = parameter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return base == other.base
+          && kind == other.kind
+          && Double.compare(parameter, other.parameter) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(base), kind, parameter);
+    }
+  }
+
+  /** A waveform that is derived from another waveform. */
+  private abstract static class Derived implements Waveform {
+    protected final Waveform base;
+
+    Derived(Waveform base) {
+      this.base = base;
+    }
+  }
+
+  private static final class Scaled extends Derived {
+    private final double factor;
+
+    Scaled(Waveform base, double factor) {
+      super(base);
+      this.factor = factor;
+    }
+
+    @Override
+    public Amplitude getAmplitude(double step) {
+      return new Amplitude(base.getAmplitude(step).getValue() * factor);
+    }
+
+    @Override
+    public double integral(double step) {
+      return base.integral(step) * factor;
+    }
+  }
+
+  private static final class Shifted extends Derived {
+    private final double phase;
+    // the integral of the base waveform from 0 to the phase, and over a full cycle
+    private final double before;
+    private final double cycle;
+
+    Shifted(Waveform base, double phase) {
+      super(base);
+      this.phase = phase;
+      this.before = base.integral(phase);
+      this.cycle = base.integral(1);
+    }
+
+    @Override
+    public Amplitude getAmplitude(double step) {
+      double shifted = step + phase;
+      return base.getAmplitude(shifted >= 1 ? shifted - 1 : shifted);
+    }
+
+    @Override
+    public double integral(double step) {
+      double shifted = step + phase;
+      if (shifted <= 1) {
+        return base.integral(shifted) - before;
+      }
+      // wrap around the end of the base waveform's cycle
+      return cycle - before + base.integral(shifted - 1);
+    }
+  }
+
+  private static final class Wavetable extends Derived {
+    private final double[] table;
+
+    Wavetable(Waveform base, int size) {
+      super(base);
+      // one extra entry, so that interpolation never wraps
+      this.table = new double[size + 1];
+      for (int i = 0; i <= size; i++) {
+        table[i] = base.getAmplitude((double) i / size).getValue();
+      }
+    }
+
+    @Override
+    public Amplitude getAmplitude(double step) {
+      double position = step * (table.length - 1);
+      int index = Math.min((int) position, table.length - 2);
+      double fraction = position - index;
+      return new Amplitude(table[index] + (table[index + 1] - table[index]) * fraction);
+    }
+
+    @Override
+    public double integral(double step) {
+      return base.integral(step);
+    }
+  }
+}
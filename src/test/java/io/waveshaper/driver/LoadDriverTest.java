@@ -0,0 +1,42 @@
+package io.waveshaper.driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.waveshaper.feedback.AimdController;
+import io.waveshaper.syncable.WaveformRateLimiter;
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.Waveforms;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class LoadDriverTest {
+  @Test
+  void testReportsToTheLimitersController() throws Exception {
+    AimdController controller =
+        new AimdController.Builder().latencyThreshold(Duration.ofMillis(1)).build();
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(Waveforms::square)
+            .sampleRate(1)
+            .sampleDuration(Duration.ofSeconds(5))
+            .range(1000, 1000)
+            .build();
+    WaveformRateLimiter limiter = WaveformRateLimiter.create(osc, controller);
+    while (limiter.getTargetRate() == 0) {
+      Thread.sleep(1);
+    }
+    assertEquals(controller, limiter.getController());
+
+    // the driver isn't given a controller, so it reports to the limiter's
+    LoadDriver driver = new LoadDriver.Builder().limiter(limiter).build();
+    driver.submit(
+        () -> {
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    assertEquals(500, controller.limit(1000), 0.001);
+  }
+}
@@ -0,0 +1,81 @@
+package io.waveshaper.feedback;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class AimdControllerTest {
+  @Test
+  void testBacksOffAndRecovers() {
+    AimdController controller =
+        new AimdController.Builder()
+            .latencyThreshold(Duration.ofMillis(100))
+            .additiveIncrease(100)
+            .decreaseFactor(0.5)
+            .build();
+
+    // a healthy system follows the waveform
+    controller.observe(Duration.ofMillis(10).toNanos(), false);
+    assertEquals(1000, controller.limit(1000), 0.001);
+    assertFalse(controller.throttling());
+
+    // a slow system causes the rate to be cut in half
+    controller.observe(Duration.ofMillis(500).toNanos(), false);
+    assertEquals(500, controller.limit(1000), 0.001);
+    assertEquals(1000, controller.getSaturationRate(), 0.001);
+    assertTrue(controller.throttling());
+
+    // the cap grows additively while the system is healthy
+    controller.observe(Duration.ofMillis(10).toNanos(), false);
+    assertEquals(600, controller.limit(1000), 0.001);
+
+    // the waveform's shape is resumed once the cap reaches it
+    controller.observe(Duration.ofMillis(10).toNanos(), false);
+    assertEquals(700, controller.limit(700), 0.001);
+    assertFalse(controller.throttling());
+  }
+
+  @Test
+  void testBacksOffOnErrors() {
+    AimdController controller = new AimdController.Builder().errorRateThreshold(0.1).build();
+    for (int i = 0; i < 10; i++) {
+      controller.observe(0, i < 5);
+    }
+    assertEquals(50, controller.limit(100), 0.001);
+  }
+
+  @Test
+  void testDoesNotRecoverWhileNothingCompletes() throws Exception {
+    AimdController controller =
+        new AimdController.Builder()
+            .latencyThreshold(Duration.ofMillis(5))
+            .additiveIncrease(100)
+            .decreaseFactor(0.5)
+            .build();
+    controller.started();
+    controller.observe(Duration.ofMillis(50).toNanos(), false);
+    assertEquals(500, controller.limit(1000), 0.001);
+
+    // ticks without any traffic hold the cap
+    for (int i = 0; i < 6; i++) {
+      assertEquals(500, controller.limit(1000), 0.001);
+    }
+
+    // requests that never complete are treated as saturation
+    controller.started();
+    controller.started();
+    Thread.sleep(10);
+    assertEquals(250, controller.limit(1000), 0.001);
+    Thread.sleep(10);
+    assertEquals(125, controller.limit(1000), 0.001);
+    assertTrue(controller.throttling());
+
+    // once requests complete again, the cap grows
+    controller.observe(Duration.ofMillis(1).toNanos(), false);
+    controller.observe(Duration.ofMillis(1).toNanos(), false);
+    assertEquals(225, controller.limit(1000), 0.001);
+  }
+}
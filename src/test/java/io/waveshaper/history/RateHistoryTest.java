@@ -0,0 +1,98 @@
+package io.waveshaper.history;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.waveshaper.history.RateHistory.Resolution;
+import io.waveshaper.history.RateHistory.Series;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+public class RateHistoryTest {
+  @Test
+  void testRollups() {
+    RateHistory history = new RateHistory.Builder().build();
+    // four samples per second for three minutes
+    for (long t = 0; t < 180_000; t += 250) {
+      history.record(t, 100, t / 1000);
+    }
+    // the last (incomplete) period of each resolution is still pending
+    Series seconds = history.snapshot(Resolution.SECONDS);
+    assertEquals(179, seconds.size());
+    assertEquals(0, seconds.timestamp(0));
+    assertEquals(178_000, seconds.timestamp(178));
+    assertEquals(100, seconds.target(178), 1e-9);
+    assertEquals(178, seconds.delivered(178), 1e-9);
+
+    Series minutes = history.snapshot(Resolution.MINUTES);
+    assertEquals(2, minutes.size());
+    assertEquals(60_000, minutes.timestamp(1));
+    // the average of 60..119
+    assertEquals(89.5, minutes.delivered(1), 1e-9);
+    assertEquals(0, history.snapshot(Resolution.HOURS).size());
+  }
+
+  @Test
+  void testRetentionIsBounded() {
+    RateHistory history =
+        new RateHistory.Builder().retain(Resolution.SECONDS, Duration.ofSeconds(10)).build();
+    for (long t = 0; t <= 25_000; t += 1000) {
+      history.record(t, t, t);
+    }
+    Series seconds = history.snapshot(Resolution.SECONDS);
+    assertEquals(10, seconds.size());
+    assertEquals(15_000, seconds.timestamp(0));
+    assertEquals(24_000, seconds.timestamp(9));
+  }
+
+  @Test
+  void testLttbKeepsPeaks() {
+    long[] x = new long[1000];
+    double[] y = new double[1000];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = i;
+      y[i] = i == 500 ? 1000 : Math.sin(i / 50.0);
+    }
+    int[] selected = Lttb.select(x, y, x.length, 50);
+    assertEquals(50, selected.length);
+    assertEquals(0, selected[0]);
+    assertEquals(999, selected[49]);
+    boolean spike = false;
+    for (int i = 0; i < selected.length; i++) {
+      spike |= selected[i] == 500;
+      assertTrue(i == 0 || selected[i] > selected[i - 1]);
+    }
+    assertTrue(spike);
+    assertArrayEquals(new int[] {0, 1, 2}, Lttb.select(x, y, 3, 10));
+  }
+
+  @Test
+  void testConcurrentSnapshotsAreConsistent() throws Exception {
+    RateHistory history =
+        new RateHistory.Builder().retain(Resolution.SECONDS, Duration.ofSeconds(64)).build();
+    AtomicBoolean done = new AtomicBoolean();
+    Thread writer =
+        new Thread(
+            () -> {
+              for (long t = 0; t < 500_000_000L; t += 1000) {
+                history.record(t, t, -t);
+              }
+              done.set(true);
+            });
+    writer.start();
+    int snapshots = 0;
+    while (!done.get() || snapshots == 0) {
+      Series series = history.snapshot(Resolution.SECONDS);
+      for (int i = 0; i < series.size(); i++) {
+        assertEquals(series.timestamp(i), series.target(i), 0.0);
+        assertEquals(-series.target(i), series.delivered(i), 0.0);
+        assertTrue(i == 0 || series.timestamp(i) == series.timestamp(i - 1) + 1000);
+      }
+      snapshots++;
+    }
+    writer.join();
+    assertEquals(64, history.snapshot(Resolution.SECONDS).size());
+  }
+}
@@ -0,0 +1,66 @@
+package io.waveshaper.latency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+  @Test
+  void testBucketsAreContiguous() {
+    // every bucket should start right after the previous one ends
+    for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+      assertEquals(
+          LatencyHistogram.highestEquivalentValue(i - 1) + 1,
+          LatencyHistogram.lowestEquivalentValue(i));
+    }
+    assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 10_000; i++) {
+      histogram.recordValue(i * 1000);
+    }
+    assertEquals(10_000, histogram.getTotalCount());
+    // values are accurate to within 1%
+    assertEquals(5_000_000, histogram.getValueAtPercentile(50), 50_000);
+    assertEquals(9_900_000, histogram.getValueAtPercentile(99), 99_000);
+    assertEquals(9_990_000, histogram.getValueAtPercentile(99.9), 99_900);
+    assertEquals(10_000_000, histogram.getMaxValue(), 100_000);
+  }
+
+  @Test
+  void testIntervalSnapshots() throws InterruptedException {
+    LatencyRecorder recorder = new LatencyRecorder();
+    recorder.record(100);
+    Thread other = new Thread(() -> recorder.record(200));
+    other.start();
+    other.join();
+    assertEquals(2, recorder.intervalSnapshot().getTotalCount());
+
+    recorder.record(1_000_000);
+    LatencyHistogram interval = recorder.intervalSnapshot();
+    assertEquals(1, interval.getTotalCount());
+    assertTrue(interval.getValueAtPercentile(50) >= 1_000_000);
+    assertEquals(3, recorder.snapshot().getTotalCount());
+  }
+
+  @Test
+  void testRecorderMemoryIsBounded() throws InterruptedException {
+    LatencyRecorder recorder = new LatencyRecorder();
+    for (int i = 0; i < 200; i++) {
+      Thread thread = new Thread(() -> recorder.record(100));
+      thread.start();
+      thread.join();
+    }
+    // short-lived threads share stripes, instead of leaving a histogram each behind
+    assertEquals(200, recorder.snapshot().getTotalCount());
+    int stripes = LatencyRecorder.stripes(Runtime.getRuntime().availableProcessors());
+    assertTrue(recorder.histogramCount() <= stripes);
+    assertEquals(1, LatencyRecorder.stripes(1));
+    assertEquals(8, LatencyRecorder.stripes(6));
+    assertEquals(8, LatencyRecorder.stripes(8));
+  }
+}
@@ -0,0 +1,42 @@
+package io.waveshaper.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.waveshaper.sequences.InfiniteSequence;
+import org.junit.jupiter.api.Test;
+
+public class CounterMetricsTest {
+  @Test
+  void testSequenceGenerationIsRecorded() {
+    CounterMetrics metrics = new CounterMetrics();
+    InfiniteSequence<String> seq =
+        new InfiniteSequence.Builder<String>().add("a").add("b").metrics(metrics).build();
+    for (int i = 0; i < 10; i++) {
+      seq.next();
+    }
+    assertEquals(10, metrics.getSequenceGeneration().getTotalCount());
+  }
+
+  @Test
+  void testCountersAreThreadsafe() throws InterruptedException {
+    CounterMetrics metrics = new CounterMetrics();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                for (int j = 0; j < 1000; j++) {
+                  metrics.recordPermitWait(j);
+                  metrics.recordRejection();
+                }
+              });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(4000, metrics.getPermits());
+    assertEquals(4000, metrics.getRejections());
+    assertEquals(4000, metrics.getPermitWait().getTotalCount());
+  }
+}
@@ -0,0 +1,118 @@
+package io.waveshaper.offline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.waveshaper.sequences.InfiniteSequence;
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.SawWave;
+import io.waveshaper.waveforms.SquareWave;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class OfflineGeneratorTest {
+  private static Oscillator constantRate() {
+    return new Oscillator.Builder()
+        .waveform(SquareWave::new)
+        .sampleRate(10)
+        .sampleDuration(Duration.ofSeconds(1))
+        .range(100, 100)
+        .build();
+  }
+
+  @Test
+  void testLinesAreGeneratedInOrder() throws Exception {
+    OfflineGenerator<String> generator =
+        new OfflineGenerator.Builder<String>()
+            .oscillator(constantRate())
+            .sequence(new InfiniteSequence.Builder<String>().add("hello").add("world"))
+            .startTime(Instant.ofEpochSecond(1))
+            .sliceDuration(Duration.ofMillis(1500))
+            .parallelism(4)
+            .build();
+    Path path = Files.createTempFile("events", ".txt");
+    try {
+      // 10 seconds at 100 events per second
+      assertEquals(1000, generator.writeTo(path));
+      List<String> lines = Files.readAllLines(path);
+      assertEquals(1000, lines.size());
+      for (int i = 0; i < lines.size(); i++) {
+        String[] fields = lines.get(i).split("\t");
+        assertEquals(1_000_000_000L + i * 10_000_000L, Long.parseLong(fields[0]));
+      }
+      assertEquals("hello", lines.get(0).split("\t")[1]);
+      assertEquals("world", lines.get(1).split("\t")[1]);
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  void testBinaryMatchesSequentialGeneration() throws Exception {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SawWave::new)
+            .cycles(2)
+            .sampleRate(10)
+            .sampleDuration(Duration.ofMillis(500))
+            .range(10, 1000)
+            .build();
+    OfflineGenerator<Long> generator =
+        new OfflineGenerator.Builder<Long>()
+            .oscillator(osc)
+            .sequence(new InfiniteSequence.Builder<Long>().add((ctx, nav) -> ctx.iteration()))
+            .format(OfflineGenerator.Format.BINARY)
+            .sliceDuration(Duration.ofMillis(700))
+            .build();
+
+    List<Long> expected = new ArrayList<>();
+    List<Long> expectedRecords = new ArrayList<>();
+    generator.forEach(
+        (time, record) -> {
+          expected.add(time);
+          expectedRecords.add(record);
+        });
+
+    Path path = Files.createTempFile("events", ".bin");
+    try {
+      assertEquals(expected.size(), generator.writeTo(path));
+      List<Long> actual = new ArrayList<>();
+      List<Long> actualRecords = new ArrayList<>();
+      try (InputStream in = Files.newInputStream(path);
+          DataInputStream data = new DataInputStream(in)) {
+        byte[] header = new byte[12];
+        while (true) {
+          try {
+            data.readFully(header);
+          } catch (EOFException e) {
+            break;
+          }
+          ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.BIG_ENDIAN);
+          actual.add(buffer.getLong());
+          byte[] record = new byte[buffer.getInt()];
+          data.readFully(record);
+          actualRecords.add(Long.parseLong(new String(record, StandardCharsets.UTF_8)));
+        }
+      }
+      assertEquals(expected, actual);
+      // records continue across slice boundaries, rather than restarting
+      assertEquals(expectedRecords, actualRecords);
+      for (int i = 1; i < actual.size(); i++) {
+        assertTrue(actual.get(i) >= actual.get(i - 1));
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
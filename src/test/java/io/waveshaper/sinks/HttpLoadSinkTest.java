@@ -0,0 +1,79 @@
+package io.waveshaper.sinks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import io.waveshaper.syncable.WaveformRateLimiter;
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.SquareWave;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class HttpLoadSinkTest {
+  @Test
+  void testPacedRequestsWithBoundedConcurrency() throws Exception {
+    AtomicInteger received = new AtomicInteger();
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxConcurrent = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    server.setExecutor(executor);
+    server.createContext(
+        "/",
+        exchange -> {
+          int n = concurrent.incrementAndGet();
+          maxConcurrent.accumulateAndGet(n, Math::max);
+          try {
+            // every fifth request fails
+            int count = received.incrementAndGet();
+            Thread.sleep(20);
+            // leave before responding, so the client can't observe the slot as free first
+            concurrent.decrementAndGet();
+            exchange.sendResponseHeaders(count % 5 == 0 ? 503 : 200, -1);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            exchange.close();
+          }
+        });
+    server.start();
+    try {
+      Oscillator osc =
+          new Oscillator.Builder()
+              .waveform(SquareWave::new)
+              .cycles(1)
+              .sampleRate(4)
+              .sampleDuration(Duration.ofMillis(250))
+              .range(200, 200)
+              .build();
+      URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+      HttpLoadSink sink =
+          new HttpLoadSink.Builder()
+              .limiter(WaveformRateLimiter.create(osc))
+              .request(HttpRequest.newBuilder(uri).GET().build())
+              .maxInFlight(2)
+              .build();
+      sink.run();
+
+      assertEquals(0, sink.getInFlight());
+      assertEquals(received.get(), sink.getSent());
+      assertEquals(received.get() / 5, sink.getFailed());
+      assertEquals(sink.getSent(), sink.recorder().snapshot().getTotalCount());
+      assertTrue(maxConcurrent.get() <= 2, "max " + maxConcurrent.get());
+      // two slots with a 20ms response time caps the rate at ~100/s, so the
+      // backlog shows up as latency against the schedule
+      assertTrue(sink.getSent() > 10);
+      assertTrue(sink.recorder().snapshot().getMaxValue() > Duration.ofMillis(100).toNanos());
+    } finally {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+}
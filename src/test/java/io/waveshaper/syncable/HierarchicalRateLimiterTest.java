@@ -0,0 +1,144 @@
+package io.waveshaper.syncable;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.Waveforms;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class HierarchicalRateLimiterTest {
+  @Test
+  void testIdleKeysShareByWeight() {
+    double[] shares =
+        HierarchicalRateLimiter.allocate(1000, new double[] {1, 3}, new double[] {0, 0});
+    assertArrayEquals(new double[] {250, 750}, shares, 1e-9);
+  }
+
+  @Test
+  void testSlackFlowsToBusyKeys() {
+    // the first key only needs 110 (100 + headroom), so the second key gets the rest
+    double[] shares =
+        HierarchicalRateLimiter.allocate(1000, new double[] {1, 1}, new double[] {100, 5000});
+    assertArrayEquals(new double[] {110, 890}, shares, 1e-9);
+  }
+
+  @Test
+  void testSaturatedKeysShareByWeight() {
+    double[] shares =
+        HierarchicalRateLimiter.allocate(
+            1000, new double[] {1, 1, 2}, new double[] {5000, 5000, 5000});
+    assertArrayEquals(new double[] {250, 250, 500}, shares, 1e-9);
+    double total = 0;
+    for (double share : shares) {
+      total += share;
+    }
+    assertEquals(1000, total, 1e-9);
+  }
+
+  @Test
+  void testLongKeyedMap() {
+    LongKeyedMap<String> map = new LongKeyedMap<>();
+    for (long key = -500; key < 500; key++) {
+      map = map.with(key * 31, "v" + key);
+    }
+    map = map.with(0, "zero");
+    assertEquals(1000, map.size());
+    assertEquals("v-500", map.get(-500 * 31));
+    assertEquals("v499", map.get(499 * 31));
+    assertEquals("zero", map.get(0));
+    assertEquals(null, map.get(1));
+  }
+
+  @Test
+  void testReweightingKeepsReservations() throws Exception {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(Waveforms::square)
+            .cycles(1)
+            .sampleRate(4)
+            .sampleDuration(Duration.ofSeconds(1))
+            .range(10, 10)
+            .build();
+    HierarchicalRateLimiter limiter = HierarchicalRateLimiter.create(osc);
+    while (limiter.getTotalRate() == 0) {
+      Thread.sleep(1);
+    }
+    limiter.register(1, 1);
+    limiter.register(2, 1);
+    assertEquals(5, limiter.getRate(1), 1e-9);
+
+    // the next permit for key 1 is 200ms away
+    assertTrue(limiter.tryAcquire(1));
+    assertFalse(limiter.tryAcquire(1));
+
+    // reweighting doesn't forget the reservation
+    limiter.register(1, 3);
+    assertTrue(limiter.getRate(1) > 5);
+    assertFalse(limiter.tryAcquire(1));
+  }
+
+  @Test
+  void testBusyKeysReachHighRates() throws Exception {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(Waveforms::square)
+            .cycles(1)
+            .sampleRate(1)
+            .sampleDuration(Duration.ofSeconds(2))
+            .range(100_000, 100_000)
+            .build();
+    HierarchicalRateLimiter limiter = HierarchicalRateLimiter.create(osc);
+    while (limiter.getTotalRate() == 0) {
+      Thread.sleep(1);
+    }
+    limiter.register(1, 1);
+
+    // oversleeping in parkNanos must not be charged to the key
+    long start = System.nanoTime();
+    long acquired = 0;
+    while (System.nanoTime() - start < 300_000_000L) {
+      limiter.acquire(1);
+      acquired++;
+    }
+    double delivered = acquired / ((System.nanoTime() - start) / 1e9);
+    assertTrue(delivered > 80_000, "delivered " + delivered);
+    assertTrue(delivered < 105_000, "delivered " + delivered);
+  }
+
+  @Test
+  void testRecoveringFromZeroWakesParkedCallers() throws Exception {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(Waveforms::square)
+            .cycles(1)
+            .sampleRate(1)
+            .sampleDuration(Duration.ofSeconds(2))
+            .range(10, 10)
+            .build();
+    HierarchicalRateLimiter limiter = HierarchicalRateLimiter.create(osc);
+    while (limiter.getTotalRate() == 0) {
+      Thread.sleep(1);
+    }
+    limiter.register(1, 1);
+    limiter.onSignalChange(0);
+
+    Thread caller =
+        new Thread(
+            () -> {
+              limiter.acquire(1);
+              limiter.acquire(1);
+            });
+    caller.start();
+    caller.join(200);
+    assertTrue(caller.isAlive());
+
+    // the parked caller picks up the new rate, instead of waiting out the zero rate
+    limiter.onSignalChange(10);
+    caller.join(1000);
+    assertFalse(caller.isAlive());
+  }
+}
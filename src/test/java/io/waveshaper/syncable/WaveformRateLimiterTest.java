@@ -0,0 +1,143 @@
+package io.waveshaper.syncable;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.waveshaper.feedback.RateController;
+import io.waveshaper.metrics.MetricsRecorder;
+import io.waveshaper.waveforms.Oscillator;
+import io.waveshaper.waveforms.SquareWave;
+import java.time.Duration;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import org.junit.jupiter.api.Test;
+
+public class WaveformRateLimiterTest {
+  @Test
+  void testWeightedSmallPayloadsAtHighRate() throws Exception {
+    double target = 2e8;
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .cycles(1)
+            .sampleRate(4)
+            .sampleDuration(Duration.ofMillis(250))
+            .range(target, target)
+            .build();
+    WaveformRateLimiter limiter = WaveformRateLimiter.createWeighted(osc);
+    while (limiter.getTargetRate() == 0) {
+      Thread.sleep(1);
+    }
+
+    // 100 byte payloads take 0.5us at this rate, which is less than the
+    // microsecond resolution of guava's RateLimiter
+    long bytes = 0;
+    long start = System.nanoTime();
+    long end = start + Duration.ofMillis(300).toNanos();
+    while (System.nanoTime() < end) {
+      limiter.acquire(100);
+      bytes += 100;
+    }
+    double delivered = bytes / ((System.nanoTime() - start) / 1e9);
+    assertTrue(delivered < target * 1.05, "delivered " + delivered);
+    assertTrue(delivered > target * 0.8, "delivered " + delivered);
+  }
+
+  @Test
+  void testWeightedRecoversFromZeroRate() throws Exception {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .cycles(1)
+            .sampleRate(1)
+            .sampleDuration(Duration.ofSeconds(2))
+            .range(1000, 1000)
+            .build();
+    WaveformRateLimiter limiter = WaveformRateLimiter.createWeighted(osc);
+    while (limiter.getTargetRate() == 0) {
+      Thread.sleep(1);
+    }
+    limiter.onSignalChange(0);
+
+    Thread caller =
+        new Thread(
+            () -> {
+              limiter.acquire(100);
+              limiter.acquire(100);
+            });
+    caller.start();
+    caller.join(200);
+    assertTrue(caller.isAlive());
+
+    // the parked caller picks up the new rate, instead of waiting out the zero rate
+    limiter.onSignalChange(1000);
+    caller.join(1000);
+    assertFalse(caller.isAlive());
+  }
+
+  @Test
+  void testWeightedWithController() throws Exception {
+    double target = 2e6;
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .cycles(1)
+            .sampleRate(4)
+            .sampleDuration(Duration.ofMillis(250))
+            .range(target, target)
+            .build();
+    RateController halve = rate -> rate / 2;
+    WaveformRateLimiter limiter = WaveformRateLimiter.createWeighted(osc, halve, 1024);
+    DoubleAccumulator delivered = new DoubleAccumulator(Math::max, 0);
+    limiter.registerMetrics(
+        new MetricsRecorder() {
+          @Override
+          public void recordDeliveredRate(double rate) {
+            delivered.accumulate(rate);
+          }
+        });
+    while (limiter.getTargetRate() == 0) {
+      Thread.sleep(1);
+    }
+
+    long start = System.nanoTime();
+    while (System.nanoTime() - start < 600_000_000L) {
+      limiter.acquire(1000);
+    }
+    // the controller caps the byte rate, and the delivered rate is reported in
+    // bytes per second (about 1000 events per second)
+    assertTrue(delivered.get() > target / 2 * 0.8, "delivered " + delivered.get());
+    assertTrue(delivered.get() < target / 2 * 1.1, "delivered " + delivered.get());
+  }
+
+  @Test
+  void testStallDoesNotBleedIntoLaterRequests() throws Exception {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .cycles(1)
+            .sampleRate(4)
+            .sampleDuration(Duration.ofSeconds(1))
+            .range(200, 200)
+            .build();
+    WaveformRateLimiter limiter = WaveformRateLimiter.create(osc);
+    while (limiter.getTargetRate() == 0) {
+      Thread.sleep(1);
+    }
+
+    long[] latencies = new long[600];
+    for (int i = 0; i < latencies.length; i++) {
+      long intended = limiter.acquireScheduled();
+      if (i == 100) {
+        // the system under test stalls for 1 second
+        Thread.sleep(1000);
+      }
+      latencies[i] = System.nanoTime() - intended;
+    }
+    // the stall is charged to the requests that were due during it
+    assertTrue(latencies[101] > 900_000_000L, "latency " + latencies[101]);
+    // but once the backlog drains, requests are on schedule again
+    for (int i = 500; i < latencies.length; i++) {
+      assertTrue(latencies[i] < 50_000_000L, "latency " + latencies[i]);
+    }
+  }
+}
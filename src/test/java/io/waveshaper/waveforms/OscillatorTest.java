@@ -1,7 +1,9 @@
 package io.waveshaper.waveforms;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -128,4 +130,113 @@ public class OscillatorTest {
     assertArrayEquals(expected, actual);
     assertFalse(osc.hasNext());
   }
+
+  @Test
+  void testFractionalPeriod() {
+    // a cycle that spans 2.5 samples
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SawWave::new)
+            .cycles(2)
+            .sampleDuration(Duration.ofSeconds(2))
+            .period(Duration.ofSeconds(5))
+            .horizontalShift(-2)
+            .range(0, 100)
+            .build();
+    Double[] expected = {50.0, 90.0, 30.0, 70.0, 10.0};
+
+    Double[] actual = osc.stream().map(this::round).toArray(Double[]::new);
+    assertArrayEquals(expected, actual);
+    assertFalse(osc.hasNext());
+  }
+
+  @Test
+  void testForever() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .sampleRate(2)
+            .forever()
+            .range(1, 50)
+            .build();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 == 0 ? 1.0 : 50.0, osc.next(), 0.001);
+    }
+    assertTrue(osc.hasNext());
+    assertTrue(osc.infinite());
+  }
+
+  @Test
+  void testReconfigureIsPhaseContinuous() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(TriangleWave::new)
+            .sampleRate(8)
+            .cycles(2)
+            .range(0, 100)
+            .build();
+    assertEquals(0.0, osc.next(), 0.001);
+    assertEquals(25.0, osc.next(), 0.001);
+
+    // doubling the period continues from the same point in the cycle
+    osc.reconfigure().sampleRate(16).range(0, 200).apply();
+    Double[] expected = {100.0, 125.0, 150.0, 175.0, 200.0, 175.0};
+    for (Double value : expected) {
+      assertEquals(value, osc.next(), 0.001);
+    }
+  }
+
+  @Test
+  void testReconfigureWithCrossfade() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .sampleRate(100)
+            .range(10, 10)
+            .build();
+    osc.next();
+    osc.reconfigure().range(50, 50).crossfade(4).apply();
+    Double[] expected = {10.0, 20.0, 30.0, 40.0, 50.0, 50.0};
+    for (Double value : expected) {
+      assertEquals(value, osc.next(), 0.001);
+    }
+  }
+
+  @Test
+  void testReconfigureDuringCrossfade() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .sampleRate(100)
+            .range(0, 0)
+            .build();
+    osc.next();
+    osc.reconfigure().range(100, 100).crossfade(4).apply();
+    assertEquals(0, osc.next(), 0.001);
+    assertEquals(25, osc.next(), 0.001);
+    // the second fade starts from the blend of the first one
+    osc.reconfigure().range(200, 200).crossfade(4).apply();
+    Double[] expected = {50.0, 87.5, 125.0, 162.5, 200.0, 200.0};
+    for (Double value : expected) {
+      assertEquals(value, osc.next(), 0.001);
+    }
+  }
+
+  @Test
+  void testRepeatedReconfigurationDuringCrossfade() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .sampleRate(50_000)
+            .range(0, 0)
+            .build();
+    // every sample interrupts the previous crossfade, which used to nest the
+    // faded out signals until sampling overflowed the stack
+    for (int i = 0; i < 40_000; i++) {
+      double rate = i % 2 == 0 ? 100 : 0;
+      osc.reconfigure().range(rate, rate).crossfade(4).apply();
+      double value = osc.next();
+      assertTrue(value >= 0 && value <= 100, "value " + value);
+    }
+  }
 }
@@ -0,0 +1,99 @@
+package io.waveshaper.waveforms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+public class PermitCurveTest {
+  // integrate a waveform using a left riemann sum, for comparison with the closed forms
+  private static double riemann(Waveform waveform, double offset) {
+    int slices = 100_000;
+    double width = offset / slices;
+    double sum = 0;
+    for (int i = 0; i < slices; i++) {
+      sum += waveform.getAmplitude(i * width).getValue() * width;
+    }
+    return sum;
+  }
+
+  @Test
+  void testClosedFormIntegrals() {
+    Supplier<?>[] waveforms = {
+      SineWave::new, SawWave::new, ReverseSawWave::new, SquareWave::new, TriangleWave::new
+    };
+    for (Supplier<?> supplier : waveforms) {
+      Waveform waveform = (Waveform) supplier.get();
+      for (double offset = 0; offset <= 1; offset += 0.05) {
+        assertEquals(
+            riemann(waveform, offset),
+            waveform.integral(offset),
+            1e-4,
+            waveform.getClass().getSimpleName() + " at " + offset);
+      }
+    }
+  }
+
+  @Test
+  void testConstantRateDeadlines() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SquareWave::new)
+            .sampleRate(10)
+            .sampleDuration(Duration.ofSeconds(1))
+            .range(100, 100)
+            .build();
+    PermitCurve curve = osc.permitCurve();
+    assertEquals(1000, curve.permitsPerCycle(), 1e-6);
+    // 100 permits per second = one permit every 10ms, with no drift
+    for (long permit : new long[] {0, 1, 99, 12_345, 1_000_000_000L}) {
+      assertEquals(permit * 10_000_000L, curve.deadlineNanos(permit));
+    }
+  }
+
+  @Test
+  void testDeadlinesInvertPermitCounts() {
+    Oscillator osc =
+        new Oscillator.Builder()
+            .waveform(SineWave::new)
+            .cycles(3)
+            .horizontalShift(3)
+            .sampleRate(12)
+            .sampleDuration(Duration.ofMillis(250))
+            .range(1, 50_000)
+            .build();
+    PermitCurve curve = osc.permitCurve();
+    for (long permit = 0; permit < 300_000; permit += 997) {
+      long deadline = curve.deadlineNanos(permit);
+      assertEquals(permit, curve.permitsAt(deadline), 0.01);
+    }
+  }
+
+  @Test
+  void testScheduleDeadlinesFollowSamples() {
+    Oscillator.Builder builder =
+        new Oscillator.Builder()
+            .waveform(SawWave::new)
+            .sampleRate(4)
+            .sampleDuration(Duration.ofSeconds(1))
+            .range(10, 40);
+    PermitCurve curve = new Oscillator.Builder().schedule(builder.compile()).build().permitCurve();
+    // each sample's rate is held for a full second
+    double expected = 0;
+    Oscillator osc = builder.build();
+    for (int second = 1; second <= 4; second++) {
+      expected += osc.next();
+      assertEquals(expected, curve.permitsAt(second * 1_000_000_000L), 1e-3);
+    }
+  }
+
+  @Test
+  void testNegativeRatesAreRejected() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new PermitCurve(new SineWave(), -1, 1, 1e9, 0));
+    Oscillator osc = new Oscillator.Builder().sampleDuration(Duration.ofMillis(10)).build();
+    assertThrows(IllegalArgumentException.class, () -> osc.permitCurve());
+  }
+}
@@ -0,0 +1,40 @@
+package io.waveshaper.waveforms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class PhaseAccumulatorTest {
+  @Test
+  void testOffsetsDoNotDriftOnLongRuns() {
+    PhaseAccumulator phase = new PhaseAccumulator(12, 0);
+    // well past the point where an int position would overflow. 2^40 ticks is
+    // roughly 35 years at 1 tick per millisecond
+    for (long ticks : new long[] {1L << 31, 3_000_000_007L, (1L << 40) + 5}) {
+      double expected = (double) (ticks % 12) / 12;
+      assertEquals(expected, phase.offsetAt(ticks), 1e-7);
+    }
+  }
+
+  @Test
+  void testFractionOfCycleIsNeverUnderestimated() {
+    // sampling exactly half way through a cycle must not land just before it
+    for (int ticksPerCycle = 2; ticksPerCycle < 1000; ticksPerCycle += 2) {
+      PhaseAccumulator phase = new PhaseAccumulator(ticksPerCycle, ticksPerCycle / 2);
+      assertEquals(0.5, phase.next(), 0);
+    }
+  }
+
+  @Test
+  void testRetuneIsPhaseContinuous() {
+    PhaseAccumulator phase = new PhaseAccumulator(10, 0);
+    for (int i = 0; i < 3; i++) {
+      phase.next();
+    }
+    assertEquals(0.3, phase.offset(), 1e-9);
+    phase.retune(2.5);
+    assertEquals(0.3, phase.next(), 1e-9);
+    assertEquals(0.7, phase.next(), 1e-9);
+    assertEquals(0.1, phase.next(), 1e-9);
+  }
+}
@@ -0,0 +1,53 @@
+package io.waveshaper.waveforms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class RateScheduleTest {
+  private static Oscillator.Builder builder() {
+    return new Oscillator.Builder()
+        .waveform(TriangleWave::new)
+        .cycles(3)
+        .horizontalShift(2)
+        .sampleRate(12)
+        .sampleDuration(Duration.ofSeconds(5))
+        .range(1, 50);
+  }
+
+  @Test
+  void testCompiledScheduleMatchesOscillator() {
+    RateSchedule schedule = builder().compile();
+    assertEquals(36, schedule.size());
+
+    Oscillator live = builder().build();
+    Oscillator replayed = new Oscillator.Builder().schedule(schedule).build();
+    for (int i = 0; i < schedule.size(); i++) {
+      double expected = live.next();
+      assertEquals(expected, schedule.get(i), 0.001);
+      assertEquals(expected, replayed.next(), 0.001);
+    }
+    assertFalse(replayed.hasNext());
+  }
+
+  @Test
+  void testMappedScheduleMatchesCompiledSchedule() throws Exception {
+    RateSchedule schedule = builder().compile();
+    Path path = Files.createTempFile("schedule", ".bin");
+    try {
+      schedule.writeTo(path);
+      RateSchedule mapped = RateSchedule.map(path);
+      assertEquals(schedule.size(), mapped.size());
+      assertEquals(schedule.sampleDuration(), mapped.sampleDuration());
+      for (int i = 0; i < schedule.size(); i++) {
+        assertEquals(schedule.get(i), mapped.get(i), 0);
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
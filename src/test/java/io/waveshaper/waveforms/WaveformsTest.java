@@ -0,0 +1,70 @@
+package io.waveshaper.waveforms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class WaveformsTest {
+  @Test
+  void testBuiltInShapesAreShared() {
+    assertSame(Waveforms.sine(), Waveforms.canonical(new SineWave()));
+    assertSame(Waveforms.reverseSaw(), Waveforms.canonical(new ReverseSawWave()));
+    Waveform custom = step -> new Amplitude(step);
+    assertSame(custom, Waveforms.canonical(custom));
+  }
+
+  @Test
+  void testDerivedFormsAreCached() {
+    assertSame(Waveforms.shifted(Waveforms.saw(), 0.25), Waveforms.shifted(new SawWave(), 1.25));
+    assertSame(Waveforms.inverted(Waveforms.sine()), Waveforms.inverted(Waveforms.sine()));
+    assertSame(Waveforms.triangle(), Waveforms.scaled(Waveforms.triangle(), 1));
+    // derived forms of caller-created waveforms are never retained
+    Waveform custom = step -> new Amplitude(step);
+    assertNotSame(Waveforms.inverted(custom), Waveforms.inverted(custom));
+    // neither are derivations of derived forms
+    Waveform inverted = Waveforms.inverted(Waveforms.sine());
+    assertNotSame(Waveforms.shifted(inverted, 0.5), Waveforms.shifted(inverted, 0.5));
+  }
+
+  @Test
+  void testCacheIsBounded() {
+    for (int i = 0; i < Waveforms.MAX_CACHED * 4; i++) {
+      Waveforms.shifted(Waveforms.sine(), i / (Waveforms.MAX_CACHED * 8.0));
+    }
+    assertTrue(Waveforms.cacheSize() <= Waveforms.MAX_CACHED);
+  }
+
+  @Test
+  void testDerivedForms() {
+    Waveform inverted = Waveforms.inverted(Waveforms.saw());
+    Waveform shifted = Waveforms.shifted(Waveforms.sine(), 0.25);
+    Waveform scaled = Waveforms.scaled(Waveforms.triangle(), 0.5);
+    Waveform table = Waveforms.wavetable(Waveforms.sine(), 4096);
+    for (double step = 0; step < 1; step += 0.01) {
+      double shiftedStep = (step + 0.25) % 1;
+      assertEquals(
+          Waveforms.reverseSaw().getAmplitude(step).getValue(),
+          inverted.getAmplitude(step).getValue(),
+          1e-12);
+      assertEquals(
+          Waveforms.sine().getAmplitude(shiftedStep).getValue(),
+          shifted.getAmplitude(step).getValue(),
+          1e-12);
+      assertEquals(
+          Waveforms.triangle().getAmplitude(step).getValue() / 2,
+          scaled.getAmplitude(step).getValue(),
+          1e-12);
+      assertEquals(
+          Waveforms.sine().getAmplitude(step).getValue(),
+          table.getAmplitude(step).getValue(),
+          1e-6);
+
+      // the closed-form integrals agree with numerical integration
+      Waveform numeric = shifted::getAmplitude;
+      assertEquals(numeric.integral(step), shifted.integral(step), 1e-6);
+    }
+  }
+}